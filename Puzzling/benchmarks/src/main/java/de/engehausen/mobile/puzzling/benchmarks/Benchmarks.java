@@ -0,0 +1,32 @@
+package de.engehausen.mobile.puzzling.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line options.
+ * The GC profiler is always enabled, so that the allocation rate
+ * (<code>gc.alloc.rate.norm</code>, bytes per operation) is reported
+ * next to the timings.
+ */
+public class Benchmarks {
+
+	/**
+	 * Runs the benchmarks.
+	 * @param args the JMH command line options, e.g. a regular expression
+	 * selecting the benchmarks to run
+	 * @throws CommandLineOptionException if the options are invalid
+	 * @throws RunnerException in case of error
+	 */
+	public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+		new Runner(new OptionsBuilder()
+			.parent(new CommandLineOptions(args))
+			.addProfiler(GCProfiler.class)
+			.build()).run();
+	}
+
+}
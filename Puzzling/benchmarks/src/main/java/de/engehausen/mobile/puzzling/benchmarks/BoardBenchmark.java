@@ -0,0 +1,113 @@
+package de.engehausen.mobile.puzzling.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.engehausen.mobile.puzzling.core.Board;
+
+/**
+ * Benchmarks the board operations of the game: shuffling, moving
+ * a tile (as done for every touch), the solved check and copying
+ * the board state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+	private static final int WALK = 1024;
+
+	@Param({ "3", "4", "5" })
+	private int split;
+
+	private Board board;
+	private Random random;
+	private int[] walk;
+
+	@Setup
+	public void setup() {
+		random = new Random(42L);
+		board = new Board(split);
+		board.shuffle(random);
+		// a random walk of the hole (never undoing the previous move); it is
+		// played forward and backward, so the board returns to its start state
+		final Board tmp = new Board(board);
+		walk = new int[WALK];
+		int previous = -1;
+		for (int i = 0; i < WALK; i++) {
+			final int hx = tmp.getHoleX();
+			final int hy = tmp.getHoleY();
+			int x, y;
+			do {
+				final int dir = random.nextInt(4);
+				x = hx + (dir == 0 ? -1 : dir == 1 ? 1 : 0);
+				y = hy + (dir == 2 ? -1 : dir == 3 ? 1 : 0);
+			} while (x < 0 || y < 0 || x >= split || y >= split || y*split+x == previous);
+			previous = hy*split+hx;
+			tmp.moveHole(x, y);
+			walk[i] = y*split+x;
+		}
+	}
+
+	@Benchmark
+	public Board shuffle() {
+		board.shuffle(random);
+		return board;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(2*WALK)
+	public boolean move() {
+		final int[] w = walk;
+		final int s = split;
+		final int start = board.getHoleY()*s+board.getHoleX();
+		boolean result = false;
+		for (int i = 0; i < WALK; i++) {
+			final int pos = w[i];
+			if (board.isMovable(pos%s, pos/s)) {
+				board.moveHole(pos%s, pos/s);
+				result |= board.isSolved();
+			}
+		}
+		for (int i = WALK-2; i >= -1; i--) {
+			final int pos = i < 0 ? start : w[i];
+			if (board.isMovable(pos%s, pos/s)) {
+				board.moveHole(pos%s, pos/s);
+				result |= board.isSolved();
+			}
+		}
+		return result;
+	}
+
+	@Benchmark
+	public boolean isSolved() {
+		return board.isSolved();
+	}
+
+	@Benchmark
+	public Board copy() {
+		return new Board(board);
+	}
+
+	@Benchmark
+	public byte[] getState() {
+		return board.getState();
+	}
+
+}
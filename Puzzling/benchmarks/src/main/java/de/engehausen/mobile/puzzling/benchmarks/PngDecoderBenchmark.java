@@ -0,0 +1,99 @@
+package de.engehausen.mobile.puzzling.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.engehausen.mobile.puzzling.core.ImageScaler;
+import de.engehausen.mobile.puzzling.core.PngDecoder;
+
+/**
+ * Benchmarks decoding PNG images straight into the 320x320 scaler, as done
+ * by the game for images too big to be decoded by the device. Decoding the
+ * whole image with <code>ImageIO</code> and scaling it afterwards is the
+ * baseline. The images are smooth gradients with some noise, which
+ * compress about as well as photos.
+ * The parameter has the form <code>width x height</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PngDecoderBenchmark {
+
+	private static final int SIZE = 320;
+
+	@Param({ "640x480", "1024x768", "2048x1536" })
+	private String dimension;
+
+	private byte[] png;
+	private ImageScaler scaler;
+
+	@Setup
+	public void setup() throws IOException {
+		final int x = dimension.indexOf('x');
+		final int width = Integer.parseInt(dimension.substring(0, x));
+		final int height = Integer.parseInt(dimension.substring(x+1));
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		final Random random = new Random(42L);
+		for (int py = 0; py < height; py++) {
+			for (int px = 0; px < width; px++) {
+				final int r = (255*px/width+random.nextInt(8))&0xff;
+				final int g = (255*py/height+random.nextInt(8))&0xff;
+				final int b = (r+g)>>1;
+				image.setRGB(px, py, (r<<16)|(g<<8)|b);
+			}
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		png = out.toByteArray();
+		scaler = new ImageScaler();
+	}
+
+	/**
+	 * Decodes the image row by row into the scaler.
+	 * @return the scaled pixels
+	 * @throws IOException in case of error
+	 */
+	@Benchmark
+	public int[] streaming() throws IOException {
+		final PngDecoder decoder = new PngDecoder(new ByteArrayInputStream(png));
+		scaler.start(decoder.getWidth(), decoder.getHeight(), SIZE, SIZE);
+		decoder.decode(scaler);
+		return scaler.getResult();
+	}
+
+	/**
+	 * Decodes the whole image with <code>ImageIO</code>, then scales it.
+	 * @return the scaled pixels
+	 * @throws IOException in case of error
+	 */
+	@Benchmark
+	public int[] decodeThenScale() throws IOException {
+		final BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		final int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+		return scaler.scale(pixels, width, height, SIZE, SIZE);
+	}
+
+}
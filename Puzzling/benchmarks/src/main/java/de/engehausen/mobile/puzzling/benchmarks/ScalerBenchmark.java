@@ -0,0 +1,145 @@
+package de.engehausen.mobile.puzzling.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.engehausen.mobile.puzzling.core.ImageScaler;
+
+/**
+ * Benchmarks the image scaling used for the big images (320x320)
+ * and the menu thumbnails (64x64), for typical source sizes. The
+ * nearest neighbour (Bresenham) scaling formerly used by the game is
+ * kept as a baseline.
+ * The parameter has the form <code>source width x source height -&gt;
+ * target size</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalerBenchmark {
+
+	@Param({ "320x320->64", "640x480->320", "1024x768->320", "2048x1536->320" })
+	private String scaling;
+
+	private int[] source;
+	private int swidth, sheight;
+	private int size;
+	private ImageScaler scaler;
+	private ImageScaler thumbnail;
+	private int[] band;
+
+	@Setup
+	public void setup() {
+		final int x = scaling.indexOf('x');
+		final int arrow = scaling.indexOf("->");
+		swidth = Integer.parseInt(scaling.substring(0, x));
+		sheight = Integer.parseInt(scaling.substring(x+1, arrow));
+		size = Integer.parseInt(scaling.substring(arrow+2));
+		source = new int[swidth*sheight];
+		final Random random = new Random(42L);
+		for (int i = source.length-1; i >= 0; i--) {
+			source[i] = 0xff000000 | random.nextInt(0x1000000);
+		}
+		scaler = new ImageScaler();
+		thumbnail = new ImageScaler();
+		band = new int[Math.max(8192, swidth)];
+	}
+
+	/**
+	 * Area averaging with the buffers of the scaler reused across calls.
+	 * @return the scaled pixels
+	 */
+	@Benchmark
+	public int[] areaAveraging() {
+		return scaler.scale(source, swidth, sheight, size, size);
+	}
+
+	/**
+	 * Area averaging as done by the game: the source is copied band by band
+	 * into a small buffer (like <code>Image.getRGB</code> does) and streamed
+	 * through the scaler.
+	 * @return the scaled pixels
+	 */
+	@Benchmark
+	public int[] areaAveragingBands() {
+		final int rows = band.length/swidth;
+		scaler.start(swidth, sheight, size, size);
+		for (int y = 0; y < sheight; y += rows) {
+			final int count = y+rows<sheight?rows:sheight-y;
+			System.arraycopy(source, y*swidth, band, 0, count*swidth);
+			scaler.addRows(band, 0, swidth, count);
+		}
+		return scaler.getResult();
+	}
+
+	/**
+	 * Produces the scaled image and a 64x64 thumbnail of it in one pass,
+	 * as done by the game for the menu.
+	 * @return the thumbnail pixels
+	 */
+	@Benchmark
+	public int[] pyramid() {
+		scaler.start(swidth, sheight, size, size);
+		thumbnail.start(size, size, 64, 64);
+		scaler.setNext(thumbnail);
+		scaler.addRows(source, 0, swidth, sheight);
+		scaler.setNext(null);
+		return thumbnail.getResult();
+	}
+
+	/**
+	 * The former nearest neighbour scaling, which copied the source and
+	 * allocated the output array for each call.
+	 * @return the scaled pixels
+	 */
+	@Benchmark
+	public int[] bresenham() {
+		final int[] rawInput = new int[source.length];
+		System.arraycopy(source, 0, rawInput, 0, source.length);
+		final int width = size;
+		final int height = size;
+		final int[] rawOutput = new int[width*height];
+
+		final int yd = (sheight / height) * swidth - swidth;
+		final int yr = sheight % height;
+		final int xd = swidth / width;
+		final int xr = swidth % width;
+		int outOffset = 0;
+		int inOffset = 0;
+
+		for (int y = height, ye = 0; y > 0; y--) {
+			for (int x = width, xe = 0; x > 0; x--) {
+				rawOutput[outOffset++] = rawInput[inOffset];
+				inOffset += xd;
+				xe += xr;
+				if (xe >= width) {
+					xe -= width;
+					inOffset++;
+				}
+			}
+			inOffset += yd;
+			ye += yr;
+			if (ye >= height) {
+				ye -= height;
+				inOffset += swidth;
+			}
+		}
+		return rawOutput;
+	}
+
+}
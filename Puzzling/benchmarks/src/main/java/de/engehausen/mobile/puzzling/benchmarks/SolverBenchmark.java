@@ -0,0 +1,82 @@
+package de.engehausen.mobile.puzzling.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.engehausen.mobile.puzzling.core.Board;
+import de.engehausen.mobile.puzzling.core.Solver;
+
+/**
+ * Benchmarks the optimal solver with one or more search threads
+ * (see {@link Solver#setThreads(int)}). The boards are random walks
+ * of the hole from the solved board, which the solver finishes well
+ * within its node budget also for 5x5 boards.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolverBenchmark {
+
+	private static final int BOARDS = 8;
+	private static final int WALK = 60;
+
+	@Param({ "4", "5" })
+	private int split;
+
+	@Param({ "1", "2", "4" })
+	private int threads;
+
+	private byte[][] boards;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(42L);
+		boards = new byte[BOARDS][];
+		for (int b = 0; b < BOARDS; b++) {
+			final Board board = new Board(split);
+			int previous = -1;
+			for (int i = 0; i < WALK; i++) {
+				final int hx = board.getHoleX();
+				final int hy = board.getHoleY();
+				int x, y;
+				do {
+					final int dir = random.nextInt(4);
+					x = hx + (dir == 0 ? -1 : dir == 1 ? 1 : 0);
+					y = hy + (dir == 2 ? -1 : dir == 3 ? 1 : 0);
+				} while (x < 0 || y < 0 || x >= split || y >= split || y*split+x == previous);
+				previous = hy*split+hx;
+				board.moveHole(x, y);
+			}
+			boards[b] = board.getState();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BOARDS)
+	public int solve() {
+		int moves = 0;
+		for (int b = 0; b < BOARDS; b++) {
+			final Solver solver = new Solver(boards[b], split, null);
+			solver.setThreads(threads);
+			moves += solver.solve().length;
+		}
+		return moves;
+	}
+
+}
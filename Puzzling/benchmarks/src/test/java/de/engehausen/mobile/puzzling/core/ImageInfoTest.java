@@ -0,0 +1,62 @@
+package de.engehausen.mobile.puzzling.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests reading image headers and choosing how to decode the images.
+ */
+public class ImageInfoTest {
+
+	private static final byte[] PNG_HEADER = {
+		(byte) 0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a,
+		0, 0, 0, 13, 'I', 'H', 'D', 'R',
+		0, 0, 0x0f, (byte) 0xa0, 0, 0, 0x0b, (byte) 0xb8 // 4000 x 3000
+	};
+
+	private static final byte[] JPEG_HEADER = {
+		(byte) 0xff, (byte) 0xd8,
+		(byte) 0xff, (byte) 0xe0, 0, 4, 0, 0, // APP0 with two bytes of data
+		(byte) 0xff, (byte) 0xc0, 0, 17, 8, 0x0b, (byte) 0xb8, 0x0f, (byte) 0xa0 // SOF0 3000 high, 4000 wide
+	};
+
+	@Test
+	public void read() {
+		final ImageInfo png = ImageInfo.read(PNG_HEADER, 0, PNG_HEADER.length);
+		assertEquals(ImageInfo.PNG, png.getType());
+		assertEquals(4000, png.getWidth());
+		assertEquals(3000, png.getHeight());
+		final ImageInfo jpeg = ImageInfo.read(JPEG_HEADER, 0, JPEG_HEADER.length);
+		assertEquals(ImageInfo.JPEG, jpeg.getType());
+		assertEquals(4000, jpeg.getWidth());
+		assertEquals(3000, jpeg.getHeight());
+		assertNull(ImageInfo.read(new byte[32], 0, 32));
+	}
+
+	@Test
+	public void strategyByFormat() {
+		final ImageInfo png = new ImageInfo(ImageInfo.PNG, 4000, 3000);
+		final ImageInfo jpeg = new ImageInfo(ImageInfo.JPEG, 4000, 3000);
+		final long full = png.getCost(1);
+		assertEquals(ImageInfo.DIRECT, png.getStrategy(full));
+		assertEquals(ImageInfo.DIRECT, jpeg.getStrategy(full));
+		assertEquals(ImageInfo.SUBSAMPLE, png.getStrategy(full-1));
+		assertEquals(ImageInfo.REJECT, jpeg.getStrategy(full-1));
+		// PNG images are decoded row by row however little memory there is
+		assertEquals(ImageInfo.SUBSAMPLE, png.getStrategy(0));
+		assertEquals(ImageInfo.REJECT, jpeg.getStrategy(0));
+	}
+
+	@Test
+	public void subsampling() {
+		// the largest factor leaving both sides at least the given size
+		assertEquals(8, new ImageInfo(ImageInfo.PNG, 4000, 3000).getSubsampling(320));
+		assertEquals(4, new ImageInfo(ImageInfo.PNG, 4000, 1300).getSubsampling(320));
+		assertEquals(2, new ImageInfo(ImageInfo.PNG, 700, 640).getSubsampling(320));
+		assertEquals(1, new ImageInfo(ImageInfo.PNG, 639, 5000).getSubsampling(320));
+		assertEquals(8, new ImageInfo(ImageInfo.PNG, 20000, 20000).getSubsampling(320));
+	}
+
+}
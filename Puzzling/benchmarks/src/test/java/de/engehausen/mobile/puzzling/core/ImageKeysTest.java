@@ -0,0 +1,59 @@
+package de.engehausen.mobile.puzzling.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests resolving relative URLs, e.g. of redirects, with the examples
+ * of RFC 3986, section 5.4.
+ */
+public class ImageKeysTest {
+
+	private static final String BASE = "http://a/b/c/d;p?q";
+
+	@Test
+	public void absolute() {
+		assertEquals("g:h", ImageKeys.resolve(BASE, "g:h"));
+		assertEquals("http://example.com/x.png", ImageKeys.resolve(BASE, "http://example.com/x.png"));
+		assertEquals("http://g", ImageKeys.resolve(BASE, "//g"));
+	}
+
+	@Test
+	public void absolutePath() {
+		assertEquals("http://a/g", ImageKeys.resolve(BASE, "/g"));
+		assertEquals("http://host:8080/img/x.png?s=1", ImageKeys.resolve("http://host:8080/old/x.png", "/img/x.png?s=1"));
+		assertEquals("http://host/x.png", ImageKeys.resolve("http://host", "/x.png"));
+	}
+
+	@Test
+	public void relativePath() {
+		assertEquals("http://a/b/c/g", ImageKeys.resolve(BASE, "g"));
+		assertEquals("http://a/b/c/g", ImageKeys.resolve(BASE, "./g"));
+		assertEquals("http://a/b/c/g/", ImageKeys.resolve(BASE, "g/"));
+		assertEquals("http://a/b/c/g?y", ImageKeys.resolve(BASE, "g?y"));
+		assertEquals("http://a/b/c/g#s", ImageKeys.resolve(BASE, "g#s"));
+		assertEquals("http://a/b/c/;x", ImageKeys.resolve(BASE, ";x"));
+		assertEquals("http://host/x.png", ImageKeys.resolve("http://host", "x.png"));
+	}
+
+	@Test
+	public void dotSegments() {
+		assertEquals("http://a/b/c/", ImageKeys.resolve(BASE, "."));
+		assertEquals("http://a/b/c/", ImageKeys.resolve(BASE, "./"));
+		assertEquals("http://a/b/", ImageKeys.resolve(BASE, ".."));
+		assertEquals("http://a/b/g", ImageKeys.resolve(BASE, "../g"));
+		assertEquals("http://a/", ImageKeys.resolve(BASE, "../.."));
+		assertEquals("http://a/g", ImageKeys.resolve(BASE, "../../g"));
+		assertEquals("http://a/g", ImageKeys.resolve(BASE, "../../../g"));
+		assertEquals("http://a/g", ImageKeys.resolve(BASE, "/./g"));
+	}
+
+	@Test
+	public void queryAndFragment() {
+		assertEquals("http://a/b/c/d;p?y", ImageKeys.resolve(BASE, "?y"));
+		assertEquals("http://a/b/c/d;p?q#s", ImageKeys.resolve(BASE, "#s"));
+		assertEquals(BASE, ImageKeys.resolve(BASE, ""));
+	}
+
+}
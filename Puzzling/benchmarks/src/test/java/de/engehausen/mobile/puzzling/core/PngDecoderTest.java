@@ -0,0 +1,94 @@
+package de.engehausen.mobile.puzzling.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+/**
+ * Tests decoding PNG images row by row into the scaler, in particular
+ * images too big to be subsampled down to the size of the big image
+ * (more than {@link ImageInfo#MAX_SUBSAMPLING} times 320 pixels on a side).
+ */
+public class PngDecoderTest {
+
+	private static final int SIZE = 320;
+
+	@Test
+	public void hugeImage() throws IOException {
+		check(3000, 2800, ImageInfo.MAX_SUBSAMPLING);
+	}
+
+	@Test
+	public void wideImage() throws IOException {
+		check(4000, 700, 2);
+	}
+
+	@Test
+	public void smallImage() throws IOException {
+		check(400, 500, 1);
+	}
+
+	/**
+	 * Encodes a gradient (red from left to right, green from top to bottom)
+	 * of the given size, decodes it with the subsampling used by the game
+	 * and checks the scaled result.
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param factor the expected subsampling factor
+	 * @throws IOException in case of error
+	 */
+	private static void check(final int width, final int height, final int factor) throws IOException {
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, (red(x, width)<<16)|(green(y, height)<<8)|0x80);
+			}
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		final byte[] png = out.toByteArray();
+
+		final ImageInfo info = ImageInfo.read(png, 0, png.length);
+		assertEquals(ImageInfo.SUBSAMPLE, info.getStrategy(0));
+		assertEquals(factor, info.getSubsampling(SIZE));
+		final PngDecoder decoder = new PngDecoder(new ByteArrayInputStream(png));
+		decoder.setSubsampling(info.getSubsampling(SIZE));
+		assertEquals((width+factor-1)/factor, decoder.getWidth());
+		assertEquals((height+factor-1)/factor, decoder.getHeight());
+		assertTrue(decoder.getWidth() >= SIZE && decoder.getHeight() >= SIZE);
+		final ImageScaler scaler = new ImageScaler();
+		scaler.start(decoder.getWidth(), decoder.getHeight(), SIZE, SIZE);
+		decoder.decode(scaler);
+		final int[] result = scaler.getResult();
+
+		// a pixel of the result covers width/SIZE pixels of the image
+		final int tolerance = 2+255*factor/Math.min(width, height);
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				final int p = result[y*SIZE+x];
+				final int cx = (2*x+1)*width/(2*SIZE);
+				final int cy = (2*y+1)*height/(2*SIZE);
+				assertEquals("red at "+x+","+y, red(cx, width), (p>>16)&0xff, tolerance);
+				assertEquals("green at "+x+","+y, green(cy, height), (p>>8)&0xff, tolerance);
+				assertEquals("blue at "+x+","+y, 0x80, p&0xff, 1);
+			}
+		}
+	}
+
+	private static int red(final int x, final int width) {
+		return 255*x/(width-1);
+	}
+
+	private static int green(final int y, final int height) {
+		return 255*y/(height-1);
+	}
+
+}
@@ -13,6 +13,7 @@ public interface Constants {
 	int GAME_RENDER_MODE_TILE = 4;
 	int GAME_RENDER_MODE_SHOW_IMAGE = 8;
 	int GAME_RENDER_MODE_SHOW_RECORD = 16;
+	int GAME_RENDER_MODE_HINT = 32;
 
 	int GAME_RENDER_MODE_FULL = GAME_RENDER_MODE_TIME|GAME_RENDER_MODE_BUTTONS|GAME_RENDER_MODE_TILE;
 
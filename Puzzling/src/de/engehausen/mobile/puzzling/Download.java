@@ -0,0 +1,213 @@
+package de.engehausen.mobile.puzzling;
+
+/**
+ * The state of a download of the {@link DownloadManager}: the progress,
+ * the deadline checked by the watchdog, the cancellation flag and,
+ * when finished, the downloaded data and the validators of the resource.
+ */
+public class Download {
+
+	private final String url;
+	private HttpRequest request;
+	private long deadline;
+	private long length;
+	private long received;
+	private int progress;
+	private boolean cancelled;
+	private boolean expired;
+	private byte[] data;
+	private String etag;
+	private String lastModified;
+	private String validator;
+
+	/**
+	 * Creates the download of the given URL.
+	 * @param anURL the URL to download, must not be <code>null</code>.
+	 */
+	public Download(final String anURL) {
+		url = anURL;
+		length = -1;
+		progress = -1;
+	}
+
+	/**
+	 * Returns the URL of the download.
+	 * @return the URL of the download, never <code>null</code>.
+	 */
+	public String getURL() {
+		return url;
+	}
+
+	/**
+	 * Returns the downloaded data.
+	 * @return the downloaded data, or <code>null</code> if the resource has
+	 * not been modified.
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * Returns the entity tag of the resource.
+	 * @return the entity tag of the resource, may be <code>null</code>.
+	 */
+	public String getETag() {
+		return etag;
+	}
+
+	/**
+	 * Returns the last modification date of the resource (as sent by the server).
+	 * @return the last modification date of the resource, may be <code>null</code>.
+	 */
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Returns the progress of the download.
+	 * @return the progress in percent, or <code>-1</code> if unknown.
+	 */
+	public synchronized int getProgress() {
+		return progress;
+	}
+
+	/**
+	 * Returns whether the download has been cancelled.
+	 * @return <code>true</code> if the download has been cancelled.
+	 */
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Cancels the download; a pending request is closed.
+	 */
+	public synchronized void cancel() {
+		cancelled = true;
+		abort();
+		notifyAll();
+	}
+
+	/**
+	 * Starts an attempt with the given request.
+	 * @param aRequest the request, must not be <code>null</code>.
+	 * @param timeout the time in milliseconds the request may take to respond
+	 * @return <code>false</code> if the download has been cancelled.
+	 */
+	synchronized boolean start(final HttpRequest aRequest, final long timeout) {
+		request = aRequest;
+		expired = false;
+		length = -1;
+		received = 0;
+		progress = -1;
+		deadline = System.currentTimeMillis()+timeout;
+		return !cancelled;
+	}
+
+	/**
+	 * Sets the length of the resource.
+	 * @param aLength the length, or <code>-1</code> if unknown.
+	 */
+	synchronized void setLength(final long aLength) {
+		length = aLength;
+		if (length > 0) {
+			progress = 0;
+		}
+	}
+
+	/**
+	 * Records received bytes and moves the deadline.
+	 * @param count the number of bytes received
+	 * @param timeout the time in milliseconds until more bytes must be received
+	 * @return <code>true</code> if the progress in percent has changed.
+	 */
+	synchronized boolean received(final int count, final long timeout) {
+		received += count;
+		deadline = System.currentTimeMillis()+timeout;
+		if (length > 0) {
+			final int percent = (int) (100*received/length);
+			if (percent != progress) {
+				progress = percent;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Aborts the current attempt if its deadline has passed.
+	 * @param now the current time
+	 */
+	synchronized void check(final long now) {
+		if (request != null && now > deadline) {
+			expired = true;
+			abort();
+		}
+	}
+
+	/**
+	 * Returns whether the current attempt has been aborted by the watchdog.
+	 * @return <code>true</code> if the current attempt has timed out.
+	 */
+	synchronized boolean isExpired() {
+		return expired;
+	}
+
+	/**
+	 * Ends the current attempt.
+	 */
+	synchronized void finish() {
+		request = null;
+	}
+
+	/**
+	 * Sets the result of the download.
+	 * @param someData the data, <code>null</code> if the resource has not been modified.
+	 * @param anETag the entity tag of the resource, may be <code>null</code>.
+	 * @param aLastModified the last modification date of the resource, may be <code>null</code>.
+	 */
+	void setResult(final byte[] someData, final String anETag, final String aLastModified) {
+		data = someData;
+		etag = anETag;
+		lastModified = aLastModified;
+	}
+
+	/**
+	 * Returns the validator used to resume the download.
+	 * @return the strong entity tag or the last modification date of the
+	 * resource, or <code>null</code> if the download cannot be resumed.
+	 */
+	String getValidator() {
+		return validator;
+	}
+
+	/**
+	 * Sets the validator used to resume the download.
+	 * @param aValidator the strong entity tag or the last modification date
+	 * of the resource, may be <code>null</code>.
+	 */
+	void setValidator(final String aValidator) {
+		validator = aValidator;
+	}
+
+	/**
+	 * Waits before the next attempt, unless the download is cancelled.
+	 * @param delay the time to wait in milliseconds
+	 */
+	synchronized void backoff(final long delay) {
+		if (!cancelled) {
+			try {
+				wait(delay);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+		}
+	}
+
+	private void abort() {
+		if (request != null) {
+			request.close();
+		}
+	}
+
+}
@@ -0,0 +1,220 @@
+package de.engehausen.mobile.puzzling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Vector;
+
+/**
+ * Downloads images over HTTP. A watchdog thread aborts requests which do
+ * not respond within {@link #CONNECT_TIMEOUT} or do not deliver data for
+ * {@link #READ_TIMEOUT}, as the connections of MIDP have no timeouts of
+ * their own. Failed downloads are retried up to {@link #ATTEMPTS} times,
+ * waiting longer each time; too many redirects and client errors
+ * (<code>4xx</code>) are not retried.
+ * Downloads can be cancelled, and their progress is reported to the menu
+ * if the server sends the length of the resource.
+ * <p>A later attempt continues an interrupted download with a <code>Range</code>
+ * request if the resource has a strong validator. The bytes of a download
+ * that finally fails are kept as {@link PartialDownloads}, so that the next
+ * download of the resource continues where it stopped.</p>
+ */
+public class DownloadManager implements Runnable {
+
+	private static final long CONNECT_TIMEOUT = 30000L;
+	private static final long READ_TIMEOUT = 15000L;
+	private static final long BACKOFF = 2000L;
+	private static final long WATCHDOG_PERIOD = 1000L;
+	private static final int ATTEMPTS = 3;
+	private static final int BUFFER_SIZE = 2048;
+	private static final int RANGE_NOT_SATISFIABLE = 416;
+	private static final String WEAK_PREFIX = "W/";
+
+	private final MenuCanvas canvas;
+	private final PartialDownloads partials;
+	private final Vector downloads;
+	private boolean watching;
+
+	/**
+	 * Creates the download manager.
+	 * @param aCanvas the menu canvas to notify about progress, must not be <code>null</code>.
+	 * @param somePartials the store for interrupted downloads, must not be <code>null</code>.
+	 */
+	public DownloadManager(final MenuCanvas aCanvas, final PartialDownloads somePartials) {
+		canvas = aCanvas;
+		partials = somePartials;
+		downloads = new Vector();
+	}
+
+	/**
+	 * Downloads the resource at the given URL. The download can be
+	 * made conditional by giving the validators of a previous download;
+	 * only unconditional downloads are resumed and kept when interrupted.
+	 * @param url the URL of the resource, must not be <code>null</code>.
+	 * @param etag the entity tag of a previous download, may be <code>null</code>.
+	 * @param lastModified the last modification date of a previous download, may be <code>null</code>.
+	 * @return the finished download; its data is <code>null</code> if
+	 * the resource has not been modified.
+	 * @throws IOException if the download failed or was cancelled
+	 */
+	public Download download(final String url, final String etag, final String lastModified) throws IOException {
+		final Download result = new Download(url);
+		final boolean resumable = etag == null && lastModified == null;
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+		if (resumable && partials.read(url, out)) {
+			result.setValidator(partials.getValidator(url));
+		}
+		add(result);
+		try {
+			long delay = BACKOFF;
+			for (int attempt = 1; true; attempt++) {
+				final HttpRequest request = new HttpRequest(url);
+				request.setValidators(etag, lastModified);
+				if (out.size() > 0 && result.getValidator() != null) {
+					request.setRange(out.size(), result.getValidator());
+				}
+				try {
+					fetch(result, request, out);
+					partials.remove(url);
+					return result;
+				} catch (IOException e) {
+					final int status = request.getStatus();
+					if (status == RANGE_NOT_SATISFIABLE && out.size() > 0) {
+						// the kept bytes do not fit the resource, start over
+						out.reset();
+						result.setValidator(null);
+					} else if (result.isCancelled() || attempt >= ATTEMPTS || (status >= 300 && status < 500)) {
+						if (resumable && !result.isCancelled() && out.size() > 0 && result.getValidator() != null) {
+							partials.save(url, result.getValidator(), out.toByteArray());
+						} else {
+							partials.remove(url);
+						}
+						throw e;
+					}
+				} finally {
+					result.finish();
+					request.close();
+				}
+				result.backoff(delay);
+				delay *= 2;
+			}
+		} finally {
+			remove(result);
+		}
+	}
+
+	/**
+	 * Cancels the downloads of the given URL.
+	 * @param url the URL, must not be <code>null</code>.
+	 */
+	public synchronized void cancel(final String url) {
+		for (int i = downloads.size()-1; i >= 0; i--) {
+			final Download download = (Download) downloads.elementAt(i);
+			if (url.equals(download.getURL())) {
+				download.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Returns the progress of the download of the given URL.
+	 * @param url the URL, must not be <code>null</code>.
+	 * @return the progress in percent, or <code>-1</code> if there is no
+	 * download of the URL or its length is unknown.
+	 */
+	public synchronized int getProgress(final String url) {
+		for (int i = downloads.size()-1; i >= 0; i--) {
+			final Download download = (Download) downloads.elementAt(i);
+			if (url.equals(download.getURL())) {
+				return download.getProgress();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Watches the running downloads, until there are none.
+	 */
+	public void run() {
+		while (true) {
+			try {
+				Thread.sleep(WATCHDOG_PERIOD);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+			synchronized (this) {
+				if (downloads.isEmpty()) {
+					watching = false;
+					return;
+				}
+				final long now = System.currentTimeMillis();
+				for (int i = downloads.size()-1; i >= 0; i--) {
+					((Download) downloads.elementAt(i)).check(now);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Performs one attempt of the download.
+	 * @param download the download, must not be <code>null</code>.
+	 * @param request the request of the attempt, must not be <code>null</code>.
+	 * @param out the bytes received so far, must not be <code>null</code>; the
+	 * request must ask for the bytes after them (if any).
+	 * @throws IOException in case of error
+	 */
+	private void fetch(final Download download, final HttpRequest request, final ByteArrayOutputStream out) throws IOException {
+		if (!download.start(request, CONNECT_TIMEOUT)) {
+			throw new IOException("cancelled");
+		}
+		try {
+			if (request.open()) {
+				if (!request.isPartial()) {
+					out.reset();
+				}
+				// a resource can only be resumed if it has a strong validator
+				final String tag = request.getETag();
+				download.setValidator(tag != null && !tag.startsWith(WEAK_PREFIX) ? tag : request.getLastModified());
+				final long length = request.getLength();
+				download.setLength(length);
+				final InputStream in = request.getInputStream();
+				final byte[] buffer = new byte[BUFFER_SIZE];
+				download.received(out.size(), READ_TIMEOUT);
+				for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+					out.write(buffer, 0, n);
+					if (download.received(n, READ_TIMEOUT)) {
+						canvas.tilesChanged();
+					}
+				}
+				if (length > 0 && out.size() != length) {
+					throw new IOException("truncated");
+				}
+				download.setResult(out.toByteArray(), request.getETag(), request.getLastModified());
+			} else {
+				download.setResult(null, request.getETag(), request.getLastModified());
+			}
+		} catch (IOException e) {
+			if (download.isExpired()) {
+				throw new IOException("timeout");
+			}
+			throw e;
+		}
+		// the watchdog or a cancellation may have closed the stream just at its end
+		if (download.isCancelled() || download.isExpired()) {
+			throw new IOException("aborted");
+		}
+	}
+
+	private synchronized void add(final Download download) {
+		downloads.addElement(download);
+		if (!watching) {
+			watching = true;
+			new Thread(this).start();
+		}
+	}
+
+	private synchronized void remove(final Download download) {
+		downloads.removeElement(download);
+	}
+
+}
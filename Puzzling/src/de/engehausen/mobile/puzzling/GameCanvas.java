@@ -9,16 +9,23 @@ import javax.microedition.media.Manager;
 import javax.microedition.media.MediaException;
 import javax.microedition.media.Player;
 
+import de.engehausen.mobile.puzzling.core.HintEngine;
+import de.engehausen.mobile.puzzling.core.Scores;
+import de.engehausen.mobile.puzzling.core.ShufflePool;
+import de.engehausen.mobile.puzzling.core.SolutionListener;
+import de.engehausen.mobile.puzzling.core.Solver;
+
 /**
  * The game canvas showing the n*n tiles, the game control
  * buttons and a timer output.
  */
-public class GameCanvas extends Canvas implements Constants {
+public class GameCanvas extends Canvas implements Constants, SolutionListener {
 
 	private static final String WAVE = "/slide.wav";
 	private static final String MEDIA_TYPE = "audio/x-wav";
 
 	private static final int BUTTON_HEIGHT = 72;
+	private static final long SOLUTION_MOVE_DELAY = 150L;
 	
 	private final Font font;	
 	private final GameButtons button;
@@ -30,8 +37,12 @@ public class GameCanvas extends Canvas implements Constants {
 	private int rx, ry; // release x,y
 	private final Main main;
 	private MenuCanvas next;
-	private final int[] scores;
+	private final Scores scores;
+	private ShufflePool shuffles;
 	private Player slideSound;
+	private volatile Solver solver;
+	private HintEngine hints;
+	private int hint;
 
 	/**
 	 * Creates the game canvas for the given main control object.
@@ -49,7 +60,7 @@ public class GameCanvas extends Canvas implements Constants {
 		renderMode = GAME_RENDER_MODE_FULL;
 		textX = (getWidth() - 5*aFont.getCharWidth())/2;
 		textY = (80 - aFont.getCharHeight())/2;
-		scores = db.getScores();
+		scores = new Scores(db.getScores());
 	}
 	
 	/**
@@ -67,21 +78,64 @@ public class GameCanvas extends Canvas implements Constants {
 		if (timer != null) {
 			timer.stop();
 		}
+		cancelSolver();
+		stopHints();
 		model = null;
 		main.setCurrent(next, true);
 		renderMode = GAME_RENDER_MODE_FULL;
 	}
 
+	/**
+	 * Stops all background activity of the canvas; invoked
+	 * when the application is destroyed.
+	 */
+	public void stop() {
+		if (timer != null) {
+			timer.stop();
+		}
+		cancelSolver();
+		stopHints();
+		if (shuffles != null) {
+			shuffles.stop();
+			shuffles = null;
+		}
+	}
+
 	/**
 	 * Resets the game canvas for use with the given model (also
-	 * shuffles the tiles for the model)
+	 * shuffles the tiles for the model). A board of calibrated
+	 * difficulty is used if the shuffle pool has one ready. The
+	 * pool is started with the first game, so that it does not
+	 * compete with the loading of the menu.
 	 * @param aModel the new model to use, must not be <code>null</code>
 	 */
 	public void reset(final Model aModel) {
 		if (timer != null) {
 			timer.stop();
 		}
-		aModel.reset();
+		cancelSolver();
+		if (shuffles == null) {
+			shuffles = new ShufflePool();
+			final Thread thread = new Thread(shuffles);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.start();
+		}
+		final byte[] state = shuffles.take(aModel.getTileCount());
+		synchronized (aModel) {
+			if (state != null) {
+				aModel.reset(state);
+			} else {
+				aModel.reset();
+			}
+		}
+		if (hints == null) {
+			hints = new HintEngine();
+			final Thread thread = new Thread(hints);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.start();
+		}
+		hints.reset(aModel.getState(), aModel.getTileCount());
+		hint = -1;
 		model = aModel;
 		renderMode = GAME_RENDER_MODE_FULL;
 		timer = new Timer(this, font);
@@ -107,12 +161,48 @@ public class GameCanvas extends Canvas implements Constants {
 	}
 
 	/**
-	 * Display the puzzle as solved.
+	 * Solve the puzzle. The solution is searched for in the
+	 * background and then played out; if no solution can be
+	 * found the puzzle is displayed as solved right away.
 	 */
 	public void solve() {
 		timer.cancel();
-		renderMode |= GAME_RENDER_MODE_SHOW_IMAGE;
-		repaint();		
+		stopHints();
+		if (solver == null && model != null) {
+			solver = new Solver(model.getState(), model.getTileCount(), this);
+			final Thread thread = new Thread(solver);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Plays out the solution found by the solver, one move at a time.
+	 * Invoked in the thread of the solver.
+	 * @param source the solver that ran the search
+	 * @param moves the positions the hole has to be moved to; may be <code>null</code>.
+	 */
+	public void solved(final Solver source, final byte[] moves) {
+		final Model current = model;
+		if (moves != null && current != null) {
+			final int t = current.getTileCount();
+			for (int i = 0; i < moves.length && solver == source; i++) {
+				synchronized (current) {
+					if (solver == source) {
+						current.moveHole(moves[i]%t, moves[i]/t);
+					}
+				}
+				repaint(GAME_RENDER_MODE_TILE);
+				try {
+					Thread.sleep(SOLUTION_MOVE_DELAY);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+			}
+		}
+		if (solver == source) {
+			repaint(GAME_RENDER_MODE_SHOW_IMAGE);
+		}
 	}
 
 	/**
@@ -139,6 +229,8 @@ public class GameCanvas extends Canvas implements Constants {
 				ry -= BUTTON_HEIGHT; // y offset compensation
 				py -= BUTTON_HEIGHT;
 				handleTileMove();
+			} else if (ry < BUTTON_HEIGHT) {
+				showHint();
 			}
 		} else if (ry > height-BUTTON_HEIGHT) {
 			ry -= height-BUTTON_HEIGHT; // y offset compensation
@@ -155,7 +247,7 @@ public class GameCanvas extends Canvas implements Constants {
 		final int ts = model.getTileSize();
 		final int x = px/ts;
 		final int y = py/ts;
-		if (model.getTile(x, y) != null) { // activated on a tile...
+		if (solver == null && model.isTile(x, y)) { // activated on a tile...
 			final int dx = rx-px;
 			final int dy = ry-py;
 			if (dx*dy != 0) {
@@ -170,16 +262,20 @@ public class GameCanvas extends Canvas implements Constants {
 					ny = dy>0?y+1:y-1;
 				}
 				if (nx >=0 && ny >=0 && nx < t && ny < t) {
-					if (model.getTile(nx, ny) == null) {
+					if (!model.isTile(nx, ny)) {
 						playSlideSound();
 						model.moveHole(x, y);
+						if (hints != null) {
+							hints.moved(y*t+x);
+						}
+						if (hint >= 0) {
+							model.clearPainted(hint%t, hint/t);
+							hint = -1;
+						}
 						if (model.isSolved()) {
 							timer.stop();
 							renderMode |= GAME_RENDER_MODE_SHOW_IMAGE;
-							final int time = timer.getTime();
-							final int idx = model.getTileCount()-3;
-							if (scores[idx]>time) {
-								scores[idx] = time;
+							if (scores.record(t, timer.getTime())) {
 								renderMode |= GAME_RENDER_MODE_SHOW_RECORD;
 							}
 						} else {
@@ -192,6 +288,39 @@ public class GameCanvas extends Canvas implements Constants {
 		}
 	}
 
+	/**
+	 * Cancels a running solver or the play out of its solution.
+	 */
+	protected void cancelSolver() {
+		if (solver != null) {
+			solver.cancel();
+			solver = null;
+		}
+	}
+
+	/**
+	 * Highlights the tile to move next, if the hint engine knows it.
+	 */
+	protected void showHint() {
+		if (hints != null && model != null) {
+			hint = hints.getHint();
+			if (hint >= 0) {
+				repaint(GAME_RENDER_MODE_HINT);
+			}
+		}
+	}
+
+	/**
+	 * Stops the hint engine (if any).
+	 */
+	protected void stopHints() {
+		if (hints != null) {
+			hints.stop();
+			hints = null;
+		}
+		hint = -1;
+	}
+
 	protected void playSlideSound() {
 		if (!button.isMuted()) {
 			try {
@@ -231,6 +360,9 @@ public class GameCanvas extends Canvas implements Constants {
 		if ( (renderMode&GAME_RENDER_MODE_TILE) != 0) {
 			tilesPaint(g);
 		}
+		if ( (renderMode&GAME_RENDER_MODE_HINT) != 0) {
+			hintPaint(g);
+		}
 		if ( (renderMode&GAME_RENDER_MODE_SHOW_IMAGE) != 0) {
 			imagePaint(g);
 		}
@@ -287,6 +419,21 @@ public class GameCanvas extends Canvas implements Constants {
 		renderMode ^= GAME_RENDER_MODE_SHOW_RECORD;
 	}
 
+	protected void hintPaint(final Graphics g) {
+		final int h = hint;
+		if (model != null && h >= 0) {
+			final int step = model.getTileSize();
+			final int max = model.getTileCount();
+			final int x = (h%max)*step;
+			final int y = BUTTON_HEIGHT-8+(h/max)*step;
+			for (int i = MENU_SELECTION.length-1; i >= 0; i--) {
+				g.setColor(MENU_SELECTION[i]);
+				g.drawRect(x+i+1, y+i+1, step-2*i-3, step-2*i-3);
+			}
+		}
+		renderMode ^= GAME_RENDER_MODE_HINT;
+	}
+
 	protected void tilesPaint(final Graphics g) {
 		if (model != null) {
 			final int step = model.getTileSize();
@@ -296,9 +443,8 @@ public class GameCanvas extends Canvas implements Constants {
 				for (int x = 0; x < max; x++) {
 					if (!model.isPainted(x, y)) {
 						model.setPainted(x, y);
-						final Image img = model.getTile(x, y);
-						if (img != null) {
-							g.drawImage(img, x*step, yy, POSITIONING);
+						if (model.isTile(x, y)) {
+							model.paintTile(g, x, y, x*step, yy);
 							g.drawLine(x*step, yy, x*step, yy+step);
 							g.drawLine(x*step, yy, (x+1)*step, yy);
 						} else {
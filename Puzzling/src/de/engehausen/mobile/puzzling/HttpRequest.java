@@ -0,0 +1,280 @@
+package de.engehausen.mobile.puzzling;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.microedition.io.Connector;
+import javax.microedition.io.HttpConnection;
+
+import de.engehausen.mobile.puzzling.core.ImageKeys;
+
+/**
+ * A HTTP GET request for an image. The request follows up to
+ * {@link #MAX_REDIRECTS} redirects (also to relative locations) and can be made conditional: if the validators of a previous response
+ * (<code>ETag</code> and <code>Last-Modified</code>) are given, they are
+ * sent as <code>If-None-Match</code> and <code>If-Modified-Since</code>
+ * and the server may answer that the resource has not been modified,
+ * without transferring it again.
+ * <p>The request can also ask for the rest of the resource from an offset
+ * on (see {@link #setRange(long, String)}), if the resource has not changed
+ * since its first part was received.</p>
+ */
+public class HttpRequest {
+
+	/**
+	 * The maximum number of redirects followed.
+	 */
+	public static final int MAX_REDIRECTS = 5;
+
+	private static final String LOCATION = "Location";
+	private static final String ETAG = "ETag";
+	private static final String LAST_MODIFIED = "Last-Modified";
+	private static final String IF_NONE_MATCH = "If-None-Match";
+	private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+	private static final String RANGE = "Range";
+	private static final String IF_RANGE = "If-Range";
+	private static final String CONTENT_RANGE = "Content-Range";
+	private static final String BYTES = "bytes ";
+	private static final int RANGE_NOT_SATISFIABLE = 416;
+
+	private final String url;
+	private String etag;
+	private String lastModified;
+	private int status;
+	private long length;
+	private long offset;
+	private String ifRange;
+	private boolean partial;
+	// written by the requesting thread, read by a thread closing the request
+	private volatile HttpConnection connection;
+	private volatile InputStream stream;
+	private volatile boolean closed;
+
+	/**
+	 * Creates the request for the given URL.
+	 * @param anURL the URL of the resource, must not be <code>null</code>.
+	 */
+	public HttpRequest(final String anURL) {
+		url = anURL;
+		status = -1;
+		length = -1;
+	}
+
+	/**
+	 * Makes the request conditional.
+	 * @param anETag the entity tag of the previous response, may be <code>null</code>.
+	 * @param aLastModified the last modification date of the previous response,
+	 * may be <code>null</code>.
+	 */
+	public void setValidators(final String anETag, final String aLastModified) {
+		etag = anETag;
+		lastModified = aLastModified;
+	}
+
+	/**
+	 * Asks for the resource from the given offset on, if it still
+	 * matches the given validator. The server may send the whole
+	 * resource instead, see {@link #isPartial()}.
+	 * @param anOffset the offset of the first byte to receive
+	 * @param aValidator the strong entity tag or the last modification date
+	 * of the resource, must not be <code>null</code>.
+	 */
+	public void setRange(final long anOffset, final String aValidator) {
+		offset = anOffset;
+		ifRange = aValidator;
+	}
+
+	/**
+	 * Performs the request. The request must be {@link #close() closed}
+	 * afterwards, also if this method fails. Closing the request from another
+	 * thread aborts a pending call of this method.
+	 * @return <code>true</code> if the resource can be read from the
+	 * {@link #getInputStream() input stream}, <code>false</code> if it
+	 * has not been modified.
+	 * @throws IOException in case of error
+	 */
+	public boolean open() throws IOException {
+		String location = url;
+		try {
+			for (int redirects = 0; redirects <= MAX_REDIRECTS; redirects++) {
+				// the connection is kept in a local variable, as close() may be called concurrently
+				final HttpConnection c = (HttpConnection) Connector.open(location, Connector.READ, true);
+				connection = c;
+				checkClosed();
+				if (etag != null) {
+					c.setRequestProperty(IF_NONE_MATCH, etag);
+				}
+				if (lastModified != null) {
+					c.setRequestProperty(IF_MODIFIED_SINCE, lastModified);
+				}
+				if (offset > 0) {
+					c.setRequestProperty(RANGE, "bytes="+offset+"-");
+					c.setRequestProperty(IF_RANGE, ifRange);
+				}
+				status = c.getResponseCode();
+				if (status == HttpConnection.HTTP_OK) {
+					etag = c.getHeaderField(ETAG);
+					lastModified = c.getHeaderField(LAST_MODIFIED);
+					length = c.getLength();
+					partial = false;
+					stream = c.openInputStream();
+					checkClosed();
+					return true;
+				} else if (status == HttpConnection.HTTP_PARTIAL && offset > 0) {
+					etag = c.getHeaderField(ETAG);
+					lastModified = c.getHeaderField(LAST_MODIFIED);
+					length = getTotalLength(c.getHeaderField(CONTENT_RANGE));
+					partial = true;
+					stream = c.openInputStream();
+					checkClosed();
+					return true;
+				} else if (status == RANGE_NOT_SATISFIABLE) {
+					throw new IOException("range not satisfiable");
+				} else if (status == HttpConnection.HTTP_NOT_MODIFIED) {
+					// the server may send updated validators
+					final String tag = c.getHeaderField(ETAG);
+					if (tag != null) {
+						etag = tag;
+					}
+					return false;
+				} else if (status >= HttpConnection.HTTP_MULT_CHOICE && status < HttpConnection.HTTP_BAD_REQUEST) {
+					final String target = c.getHeaderField(LOCATION);
+					disconnect();
+					if (target == null) {
+						throw new IOException("redirect without location");
+					}
+					location = ImageKeys.resolve(location, target);
+				} else {
+					throw new IOException("HTTP status "+status);
+				}
+			}
+			throw new IOException("too many redirects");
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the stream with the content of the resource.
+	 * {@link #open()} must have returned <code>true</code> before.
+	 * @return the stream with the content of the resource.
+	 */
+	public InputStream getInputStream() {
+		return stream;
+	}
+
+	/**
+	 * Returns the status code of the last response.
+	 * @return the status code of the last response, or <code>-1</code>
+	 * if there was no response.
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns whether only the rest of the resource is sent, starting
+	 * at the offset given by {@link #setRange(long, String)}.
+	 * @return <code>true</code> if the rest of the resource is sent,
+	 * <code>false</code> if the whole resource is sent.
+	 */
+	public boolean isPartial() {
+		return partial;
+	}
+
+	/**
+	 * Returns the length of the whole resource, as sent by the server;
+	 * this includes the bytes before the offset of a partial response.
+	 * @return the length of the resource, or <code>-1</code> if unknown.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the entity tag of the resource.
+	 * @return the entity tag of the resource, may be <code>null</code>.
+	 */
+	public String getETag() {
+		return etag;
+	}
+
+	/**
+	 * Returns the last modification date of the resource (as sent by the server).
+	 * @return the last modification date of the resource, may be <code>null</code>.
+	 */
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Returns the length of the whole resource from a <code>Content-Range</code>
+	 * header (<code>bytes first-last/length</code>), checking that the range
+	 * starts at the requested offset.
+	 * @param range the value of the header, may be <code>null</code>.
+	 * @return the length of the resource, or <code>-1</code> if unknown.
+	 * @throws IOException if the range does not start at the requested offset
+	 */
+	private long getTotalLength(final String range) throws IOException {
+		if (range == null || !range.startsWith(BYTES)) {
+			throw new IOException("bad content range");
+		}
+		final int dash = range.indexOf('-');
+		final int slash = range.indexOf('/');
+		try {
+			if (dash < 0 || slash < dash || Long.parseLong(range.substring(BYTES.length(), dash).trim()) != offset) {
+				throw new IOException("bad content range");
+			}
+			final String total = range.substring(slash+1).trim();
+			return "*".equals(total) ? -1 : Long.parseLong(total);
+		} catch (NumberFormatException e) {
+			throw new IOException("bad content range");
+		}
+	}
+
+	/**
+	 * Closes the request. This may be called from another thread
+	 * to abort the request.
+	 */
+	public void close() {
+		closed = true;
+		disconnect();
+	}
+
+	/**
+	 * Aborts the request if it has been closed meanwhile, as the closing
+	 * thread may have missed the connection or stream just opened.
+	 * @throws IOException if the request has been closed
+	 */
+	private void checkClosed() throws IOException {
+		if (closed) {
+			disconnect();
+			throw new IOException("closed");
+		}
+	}
+
+	/**
+	 * Closes the stream and the connection, if any.
+	 */
+	private void disconnect() {
+		final InputStream s = stream;
+		final HttpConnection c = connection;
+		stream = null;
+		connection = null;
+		try {
+			if (s != null) {
+				s.close();
+			}
+		} catch (IOException e) {
+			// ignore
+		}
+		try {
+			if (c != null) {
+				c.close();
+			}
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+}
@@ -0,0 +1,444 @@
+package de.engehausen.mobile.puzzling;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Vector;
+
+import javax.microedition.rms.RecordEnumeration;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+import javax.microedition.rms.RecordStoreFullException;
+
+/**
+ * Persistent cache of scaled images, backed by the "puzzling-images"
+ * record store. The pixels of an image are stored as RGB bytes (the
+ * alpha channel is dropped) in records of at most 15 kilobytes; the
+ * first record holds an index of the cached images.
+ * <p>For images loaded via HTTP the validators of the response (entity
+ * tag and last modification date) are kept along with the time the image
+ * was last fetched or validated, so that the image can be revalidated
+ * with a conditional request once it is old enough.</p>
+ * <p>The cache has a byte budget; if storing an image would exceed it,
+ * the least recently used images are evicted. Reading an image only
+ * updates the order of use in memory; it is written along with the next
+ * change of the index or by {@link #save()}. If there is a problem with
+ * the record store, a cache that stores nothing is returned.</p>
+ * <p>The cache can be used by several threads.</p>
+ */
+public final class ImageCache {
+
+	/** The default byte budget (two megabytes). */
+	public static final int DEFAULT_BUDGET = 2*1024*1024;
+
+	private static final String STORE_NAME = "puzzling-images";
+	private static final int INDEX_RECORD = 1;
+	private static final int CHUNK_SIZE = 3*5*1024; // a multiple of three
+	private static final int VERSION = 1;
+
+	private final RecordStore store;
+	private final int budget;
+	private final Vector entries;
+	private int size;
+	private int clock;
+	private boolean used;
+
+	/**
+	 * Creates an instance of the image cache. If there is a problem
+	 * with the record store, a cache that stores nothing is returned.
+	 * @param budget the maximum number of bytes used for cached images
+	 * @return an instance of the image cache.
+	 */
+	public static ImageCache createImageCache(final int budget) {
+		ImageCache result;
+		try {
+			result = new ImageCache(RecordStore.openRecordStore(STORE_NAME, true), budget);
+		} catch (RecordStoreException e) {
+			result = new ImageCache(null, 0);
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the image cache backed by the given record store.
+	 * @param aStore the record store, may be <code>null</code> for a cache
+	 * not storing anything
+	 * @param aBudget the maximum number of bytes used for cached images
+	 */
+	private ImageCache(final RecordStore aStore, final int aBudget) {
+		store = aStore;
+		budget = aBudget;
+		entries = new Vector();
+		if (store != null) {
+			load();
+		}
+	}
+
+	/**
+	 * Checks whether the image for the given key is cached.
+	 * @param key the key (typically the image source), must not be <code>null</code>.
+	 * @return <code>true</code> if the image is cached.
+	 */
+	public synchronized boolean contains(final String key) {
+		return find(key) != null;
+	}
+
+	/**
+	 * Reads the cached pixels for the given key. The image becomes the
+	 * most recently used one.
+	 * @param key the key (typically the image source), must not be <code>null</code>.
+	 * @param pixels the array receiving the (opaque) pixels, must not be
+	 * <code>null</code> and must hold at least as many pixels as have been stored.
+	 * @return <code>true</code> if the pixels were read, <code>false</code> if
+	 * the image is not cached (or could not be read).
+	 */
+	public synchronized boolean get(final String key, final int[] pixels) {
+		final Entry entry = find(key);
+		boolean result = false;
+		if (entry != null) {
+			try {
+				final byte[] chunk = new byte[CHUNK_SIZE];
+				int out = 0;
+				for (int i = 0; i < entry.records.length; i++) {
+					final int len = store.getRecord(entry.records[i], chunk, 0);
+					for (int j = 0; j < len; j += 3) {
+						pixels[out++] = 0xff000000|((chunk[j]&0xff)<<16)|((chunk[j+1]&0xff)<<8)|(chunk[j+2]&0xff);
+					}
+				}
+				entry.use = ++clock;
+				used = true;
+				result = true;
+			} catch (RecordStoreException e) {
+				remove(entry);
+			} catch (ArrayIndexOutOfBoundsException e) {
+				remove(entry);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Checks whether the cached image for the given key was fetched
+	 * (or validated) longer ago than the given age.
+	 * @param key the key (typically the image source), must not be <code>null</code>.
+	 * @param maxAge the age in milliseconds
+	 * @return <code>true</code> if the image is cached and older than the given age.
+	 */
+	public synchronized boolean isStale(final String key, final long maxAge) {
+		final Entry entry = find(key);
+		return entry != null && System.currentTimeMillis()-entry.fetched > maxAge;
+	}
+
+	/**
+	 * Returns the entity tag of the cached image for the given key.
+	 * @param key the key (typically the image source), must not be <code>null</code>.
+	 * @return the entity tag, or <code>null</code> if there is none.
+	 */
+	public synchronized String getETag(final String key) {
+		final Entry entry = find(key);
+		return entry != null ? entry.etag : null;
+	}
+
+	/**
+	 * Returns the last modification date of the cached image for the given key.
+	 * @param key the key (typically the image source), must not be <code>null</code>.
+	 * @return the last modification date as sent by the server, or <code>null</code>
+	 * if there is none.
+	 */
+	public synchronized String getLastModified(final String key) {
+		final Entry entry = find(key);
+		return entry != null ? entry.lastModified : null;
+	}
+
+	/**
+	 * Marks the cached image for the given key as validated, i.e. the
+	 * server has confirmed that it has not been modified.
+	 * @param key the key (typically the image source), must not be <code>null</code>.
+	 * @param etag the (possibly updated) entity tag, may be <code>null</code>.
+	 */
+	public synchronized void validated(final String key, final String etag) {
+		final Entry entry = find(key);
+		if (entry != null) {
+			entry.fetched = System.currentTimeMillis();
+			if (etag != null) {
+				entry.etag = etag;
+			}
+			saveIndex();
+		}
+	}
+
+	/**
+	 * Stores the given pixels under the given key, replacing a previously
+	 * cached image. Least recently used images are evicted to stay within
+	 * the budget; images bigger than the budget are not stored.
+	 * @param key the key (typically the image source), must not be <code>null</code>.
+	 * @param pixels the pixels, must not be <code>null</code>.
+	 * @param count the number of pixels to store
+	 * @param etag the entity tag of the image, may be <code>null</code>.
+	 * @param lastModified the last modification date of the image, may be <code>null</code>.
+	 */
+	public synchronized void put(final String key, final int[] pixels, final int count, final String etag, final String lastModified) {
+		if (store == null) {
+			return;
+		}
+		final Entry old = find(key);
+		if (old != null) {
+			drop(old);
+		}
+		final int bytes = 3*count;
+		if (bytes > budget) {
+			if (old != null) {
+				saveIndex();
+			}
+			return;
+		}
+		while (size+bytes > budget && evict()) {
+			// evicted the least recently used image
+		}
+		final Entry entry = new Entry(key, new int[(bytes+CHUNK_SIZE-1)/CHUNK_SIZE], bytes);
+		final byte[] chunk = new byte[CHUNK_SIZE];
+		int in = 0;
+		int written = 0;
+		try {
+			while (written < entry.records.length) {
+				int len = 0;
+				while (len < CHUNK_SIZE && in < count) {
+					final int p = pixels[in++];
+					chunk[len++] = (byte) (p>>16);
+					chunk[len++] = (byte) (p>>8);
+					chunk[len++] = (byte) p;
+				}
+				try {
+					entry.records[written] = store.addRecord(chunk, 0, len);
+					written++;
+				} catch (RecordStoreFullException e) {
+					if (!evict()) {
+						throw e;
+					}
+					in -= len/3;
+				}
+			}
+			entry.use = ++clock;
+			entry.fetched = System.currentTimeMillis();
+			entry.etag = etag;
+			entry.lastModified = lastModified;
+			entries.addElement(entry);
+			size += bytes;
+		} catch (RecordStoreException e) {
+			for (int i = 0; i < written; i++) {
+				deleteRecord(entry.records[i]);
+			}
+		}
+		// a single write for the replaced, evicted and added images
+		saveIndex();
+	}
+
+	/**
+	 * Removes the cached image for the given key, if any.
+	 * @param key the key (typically the image source), must not be <code>null</code>.
+	 */
+	public synchronized void remove(final String key) {
+		final Entry entry = find(key);
+		if (entry != null) {
+			remove(entry);
+		}
+	}
+
+	/**
+	 * Writes the order of use of the cached images, if it changed since
+	 * the index was last written; invoked when the application is destroyed.
+	 */
+	public synchronized void save() {
+		if (store != null && used) {
+			saveIndex();
+		}
+	}
+
+	private Entry find(final String key) {
+		for (int i = entries.size()-1; i >= 0; i--) {
+			final Entry entry = (Entry) entries.elementAt(i);
+			if (entry.key.equals(key)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Evicts the least recently used image; the index is not written.
+	 * @return <code>true</code> if an image was evicted.
+	 */
+	private boolean evict() {
+		Entry lru = null;
+		for (int i = entries.size()-1; i >= 0; i--) {
+			final Entry entry = (Entry) entries.elementAt(i);
+			if (lru == null || entry.use < lru.use) {
+				lru = entry;
+			}
+		}
+		if (lru != null) {
+			drop(lru);
+		}
+		return lru != null;
+	}
+
+	private void remove(final Entry entry) {
+		drop(entry);
+		saveIndex();
+	}
+
+	/**
+	 * Removes the given image and deletes its records without
+	 * writing the index.
+	 * @param entry the image, must not be <code>null</code>.
+	 */
+	private void drop(final Entry entry) {
+		entries.removeElement(entry);
+		size -= entry.size;
+		for (int i = 0; i < entry.records.length; i++) {
+			deleteRecord(entry.records[i]);
+		}
+	}
+
+	private void deleteRecord(final int id) {
+		try {
+			store.deleteRecord(id);
+		} catch (RecordStoreException e) {
+			// ignore
+		}
+	}
+
+	/**
+	 * Reads the index and deletes records not referenced by it
+	 * (e.g. left over from an interrupted write).
+	 */
+	private void load() {
+		try {
+			if (store.getNumRecords() == 0) {
+				final byte[] empty = createIndex();
+				store.addRecord(empty, 0, empty.length);
+			} else {
+				final DataInputStream in = new DataInputStream(new ByteArrayInputStream(store.getRecord(INDEX_RECORD)));
+				final int version = in.readInt();
+				if (version == VERSION) {
+					clock = in.readInt();
+					for (int i = in.readInt(); i > 0; i--) {
+						final String key = in.readUTF();
+						final int bytes = in.readInt();
+						final int use = in.readInt();
+						final int[] records = new int[in.readInt()];
+						for (int j = 0; j < records.length; j++) {
+							records[j] = in.readInt();
+						}
+						final Entry entry = new Entry(key, records, bytes);
+						entry.use = use;
+						entry.fetched = in.readLong();
+						entry.etag = readString(in);
+						entry.lastModified = readString(in);
+						entries.addElement(entry);
+						size += bytes;
+					}
+				}
+				final RecordEnumeration e = store.enumerateRecords(null, null, false);
+				try {
+					while (e.hasNextElement()) {
+						final int id = e.nextRecordId();
+						if (id != INDEX_RECORD && !isReferenced(id)) {
+							deleteRecord(id);
+						}
+					}
+				} finally {
+					e.destroy();
+				}
+			}
+		} catch (RecordStoreException e) {
+			entries.removeAllElements();
+			size = 0;
+		} catch (IOException e) {
+			entries.removeAllElements();
+			size = 0;
+		}
+	}
+
+	private boolean isReferenced(final int id) {
+		for (int i = entries.size()-1; i >= 0; i--) {
+			final int[] records = ((Entry) entries.elementAt(i)).records;
+			for (int j = records.length-1; j >= 0; j--) {
+				if (records[j] == id) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void saveIndex() {
+		try {
+			final byte[] index = createIndex();
+			store.setRecord(INDEX_RECORD, index, 0, index.length);
+			used = false;
+		} catch (RecordStoreException e) {
+			// ignore
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	private byte[] createIndex() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(VERSION);
+		out.writeInt(clock);
+		out.writeInt(entries.size());
+		for (int i = 0; i < entries.size(); i++) {
+			final Entry entry = (Entry) entries.elementAt(i);
+			out.writeUTF(entry.key);
+			out.writeInt(entry.size);
+			out.writeInt(entry.use);
+			out.writeInt(entry.records.length);
+			for (int j = 0; j < entry.records.length; j++) {
+				out.writeInt(entry.records[j]);
+			}
+			out.writeLong(entry.fetched);
+			writeString(out, entry.etag);
+			writeString(out, entry.lastModified);
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static void writeString(final DataOutputStream out, final String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(final DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * A cached image.
+	 */
+	private static class Entry {
+
+		final String key;
+		final int[] records;
+		final int size;
+		int use;
+		long fetched;
+		String etag;
+		String lastModified;
+
+		Entry(final String aKey, final int[] someRecords, final int aSize) {
+			key = aKey;
+			records = someRecords;
+			size = aSize;
+		}
+
+	}
+
+}
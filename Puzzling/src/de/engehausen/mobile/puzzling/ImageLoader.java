@@ -0,0 +1,143 @@
+package de.engehausen.mobile.puzzling;
+
+import java.util.Vector;
+
+/**
+ * Loads the images of the tile buttons with a fixed number of background
+ * threads. Requests are queued; a request for an index that is already
+ * queued, or for an image source that is already queued, is dropped, as
+ * the loaded image is given to all tile buttons waiting for it. A request
+ * for an image source being loaded is queued, since the running load may
+ * have given out its image already; it waits for the running load and is
+ * then served from memory or the image cache.
+ * Image sources are compared by their normalized URL (see {@link TileButtons#getKey(int)}).
+ * The image of the selected tile button can be moved to the front of the
+ * queue, as it is the one needed next for playing.
+ */
+public class ImageLoader implements Runnable {
+
+	private static final int THREADS = 2;
+
+	private final TileButtons buttons;
+	private final MenuCanvas canvas;
+	private final Vector queue;
+	private final Vector active;
+	private boolean started;
+
+	/**
+	 * Creates the loader. The threads are started with the first request.
+	 * @param someButtons the tile buttons to load the images for, must not be <code>null</code>.
+	 * @param aCanvas the menu canvas to notify about loaded images, must not be <code>null</code>.
+	 */
+	public ImageLoader(final TileButtons someButtons, final MenuCanvas aCanvas) {
+		buttons = someButtons;
+		canvas = aCanvas;
+		queue = new Vector();
+		active = new Vector();
+	}
+
+	/**
+	 * Requests loading the image at the given index.
+	 * @param idx the index of the image
+	 */
+	public synchronized void request(final int idx) {
+		final String source = buttons.getKey(idx);
+		if (source != null && find(idx, source) < 0) {
+			queue.addElement(new Integer(idx));
+			if (!started) {
+				started = true;
+				for (int i = 0; i < THREADS; i++) {
+					new Thread(this).start();
+				}
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Moves the request for the image at the given index to the front
+	 * of the queue, if it is queued.
+	 * @param idx the index of the image
+	 */
+	public synchronized void prioritize(final int idx) {
+		final int pos = find(idx, buttons.getKey(idx));
+		if (pos > 0) {
+			final Object request = queue.elementAt(pos);
+			queue.removeElementAt(pos);
+			queue.insertElementAt(request, 0);
+		}
+	}
+
+	/**
+	 * Marks the given image source as being loaded; waits if the source
+	 * is already being loaded by another thread.
+	 * Each call must be followed by a call to {@link #release(String)}.
+	 * @param source the image source, must not be <code>null</code>.
+	 */
+	public synchronized void acquire(final String source) {
+		while (active.contains(source)) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				// ignore and check again
+			}
+		}
+		active.addElement(source);
+	}
+
+	/**
+	 * Marks the given image source as loaded.
+	 * @param source the image source, must not be <code>null</code>.
+	 */
+	public synchronized void release(final String source) {
+		active.removeElement(source);
+		notifyAll();
+	}
+
+	// non-javadoc: see interface
+	public void run() {
+		while (true) {
+			final int idx = take();
+			final String source = buttons.getKey(idx);
+			if (source != null) {
+				acquire(source);
+				try {
+					buttons.loadImage(idx);
+				} finally {
+					release(source);
+				}
+				canvas.tilesChanged();
+			}
+		}
+	}
+
+	private synchronized int take() {
+		while (queue.isEmpty()) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				// ignore and check again
+			}
+		}
+		final int result = ((Integer) queue.elementAt(0)).intValue();
+		queue.removeElementAt(0);
+		return result;
+	}
+
+	/**
+	 * Finds the queued request for the given index or source.
+	 * @param idx the index of the image
+	 * @param source the image source, may be <code>null</code>.
+	 * @return the position in the queue, or <code>-1</code>.
+	 */
+	private int find(final int idx, final String source) {
+		for (int i = queue.size()-1; i >= 0; i--) {
+			final int other = ((Integer) queue.elementAt(i)).intValue();
+			if (other == idx || (source != null && source.equals(buttons.getKey(other)))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
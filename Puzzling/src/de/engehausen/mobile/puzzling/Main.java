@@ -15,9 +15,14 @@ import javax.microedition.midlet.MIDletStateChangeException;
  */
 public class Main extends MIDlet {
 	
+	private static final String IMAGE_CACHE_PROPERTY = "Puzzling-Image-Cache";
+
 	private final Display display;
 	private final Database db;
+	private final ImageCache cache;
+	private final ThumbnailCache thumbnails;
 	private Displayable current;
+	private GameCanvas game;
 	private boolean splashed;
 	
 	/**
@@ -29,6 +34,8 @@ public class Main extends MIDlet {
 		display = Display.getDisplay(this);
 		db = Database.createDatabase();
 		db.load();
+		cache = ImageCache.createImageCache(getImageCacheBudget());
+		thumbnails = ThumbnailCache.createThumbnailCache();
 	}
 
 	/**
@@ -54,13 +61,13 @@ public class Main extends MIDlet {
 				splash.display(this);
 				final Image[] buttonImages = splitImages("/buttons.png");
 				final Font font = Font.getInstance();
-				final MenuCanvas menu = new MenuCanvas(this, db, buttonImages);
+				final MenuCanvas menu = new MenuCanvas(this, db, cache, thumbnails, buttonImages);
 				menu.setFullScreenMode(true);
 				final InputCanvas ic = new InputCanvas(this, font);
 				ic.setFullScreenMode(true);
 				ic.setMenuCanvas(menu);
 				menu.setInputCanvas(ic);
-				final GameCanvas game = new GameCanvas(this, db, font, buttonImages);
+				game = new GameCanvas(this, db, font, buttonImages);
 				game.setFullScreenMode(true);
 				menu.setGameCanvas(game);
 				game.setMenuCanvas(menu);
@@ -79,10 +86,32 @@ public class Main extends MIDlet {
 
 	// non-javadoc: see superclass
 	protected void destroyApp(final boolean force) throws MIDletStateChangeException {
+		if (game != null) {
+			game.stop();
+		}
+		cache.save();
 		db.save();
 //		db.delete();
 	}
 	
+	/**
+	 * Returns the byte budget of the image cache, as set by the
+	 * <code>Puzzling-Image-Cache</code> application property.
+	 * @return the byte budget of the image cache
+	 */
+	private int getImageCacheBudget() {
+		final String value = getAppProperty(IMAGE_CACHE_PROPERTY);
+		int result = ImageCache.DEFAULT_BUDGET;
+		if (value != null) {
+			try {
+				result = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		return result;
+	}
+
 	private static Image[] splitImages(final String src) throws IOException {
 		final Image source = Image.createImage(src);
 		final Image[] result = new Image[11];
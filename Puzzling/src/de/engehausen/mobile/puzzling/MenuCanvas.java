@@ -21,6 +21,8 @@ public class MenuCanvas extends Canvas implements Constants {
 	private final PlusMinusButtons plusMinusButtons;
 	private final TileButtons tileButtons;
 	private final MenuButtons menuButtons;
+	private final ModelCache models;
+	private final Preloader preloader;
 	private final int menuOffset;
 	private final Main main;
 	private int mode;
@@ -33,15 +35,19 @@ public class MenuCanvas extends Canvas implements Constants {
 	 * Creates the menu canvas for the given main control object.
 	 * @param aMain the main control object, must not be <code>null</code>
 	 * @param db the database, must not be <code>null</code>
+	 * @param cache the image cache, must not be <code>null</code>
+	 * @param thumbnails the thumbnail cache, must not be <code>null</code>
 	 * @param buttons the buttons image list, must not be <code>null</code>
 	 * @throws IOException in case of error
 	 */
-	public MenuCanvas(final Main aMain, final Database db, final Image[] buttons) throws IOException {
+	public MenuCanvas(final Main aMain, final Database db, final ImageCache cache, final ThumbnailCache thumbnails, final Image[] buttons) throws IOException {
 		super();
 		main = aMain;
 		final int width = getWidth();
 		mode = MENU_RENDER_FULL;
-		tileButtons = new TileButtons(db, this, createRects());
+		tileButtons = new TileButtons(db, cache, thumbnails, this, createRects());
+		models = new ModelCache();
+		preloader = new Preloader(tileButtons, models);
 		plusMinusButtons = new PlusMinusButtons(this, buttons, width);
 		menuButtons = new MenuButtons(this, buttons, width);
 		menuOffset = getHeight()-menuButtons.getHeight()-Y_START+8;
@@ -68,6 +74,7 @@ public class MenuCanvas extends Canvas implements Constants {
 	 * @param url the URL to set.
 	 */
 	public void setURL(final String url) {
+		forget(selection);
 		tileButtons.set(selection, url);
 		repaint();
 	}
@@ -82,34 +89,44 @@ public class MenuCanvas extends Canvas implements Constants {
 	}
 
 	/**
-	 * Play a game.
+	 * Play a game. The models of recently played or preloaded images are reused.
 	 */
 	public void play() {
 		new Thread((new Runnable() {
 			public void run() {
-				final Image img = tileButtons.getBigImage(selection);
-				if (img != null) {
-					try {
-						next.reset(new Model(img, menuButtons.getSplit()));
-						main.setCurrent(next, true);
-						mode = MENU_RENDER_FULL;
-						tileButtons.reset();
-				} catch (IOException e) {
-						// ignore
+				final int idx = selection;
+				final int split = menuButtons.getSplit();
+				final String key = tileButtons.getKey(idx);
+				Model model = preloader.take(idx, split);
+				if (model == null) {
+					final Image img = tileButtons.getBigImage(idx);
+					if (img != null) {
+						model = new Model(img, split);
+						if (!tileButtons.isPlaceholder(img)) {
+							models.put(key, model);
+						}
 					}
 				}
+				if (model != null) {
+					next.reset(model);
+					main.setCurrent(next, true);
+					mode = MENU_RENDER_FULL;
+					tileButtons.reset();
+				}
 			}
 		})).start();
 	}
 
 	/**
 	 * Sets the new selection position. Causes a repaint to
-	 * indicate the new selection.
+	 * indicate the new selection, and preloads the selected image.
 	 * @param newSelection the new selection position
 	 */
 	public void setSelection(final int newSelection) {
 		oldSelection = selection;
 		selection = newSelection;
+		tileButtons.prioritize(newSelection);
+		preloader.select(newSelection, menuButtons.getSplit());
 		mode |= MENU_RENDER_SELECTION;
 		repaint();
 	}
@@ -156,11 +173,23 @@ public class MenuCanvas extends Canvas implements Constants {
 	 * Causes a repaint to update the screen.
 	 */
 	public void removeSelection() {
+		forget(selection);
 		tileButtons.remove(selection);
 		mode |= MENU_RENDER_IMAGES;
 		repaint();
 	}
 
+	/**
+	 * Removes the cached models of the image source at the given index.
+	 * @param idx the index of the image source
+	 */
+	private void forget(final int idx) {
+		final String key = tileButtons.getKey(idx);
+		if (key != null) {
+			models.remove(key);
+		}
+	}
+
 	/**
 	 * Resets the view such that on the next paint
 	 * everything is repainted.
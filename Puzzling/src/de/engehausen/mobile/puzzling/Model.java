@@ -1,50 +1,39 @@
 package de.engehausen.mobile.puzzling;
 
-import java.io.IOException;
-import java.util.Random;
-
+import javax.microedition.lcdui.Graphics;
 import javax.microedition.lcdui.Image;
 import javax.microedition.lcdui.game.Sprite;
 
+import de.engehausen.mobile.puzzling.core.Board;
+
 /**
  * Model representing the tiles of an image.
+ * The game state is held by a {@link Board}; the model maps
+ * the tile indices of the board to regions of the image, which
+ * are only used for painting. The tiles are painted straight from
+ * the image, so no tile images are created.
  * The model also (somewhat uncleanly, but conveniently) tracks
  * what tiles have been painted.
  */
 public class Model implements Constants {
-	
-	private static final int[][] CROSSHAIR = {
-		{ -1, 0 }, { 0, -1 }, { 1, 0 }, { 0, 1 }
-	};
 
-	private static final Random RANDOM = new Random(System.currentTimeMillis());
-
-	private final Image[][] template;
-	private final Image[][] elements;
-	private final boolean[][] painted;
+	private final Board board;
+	private final boolean[] painted;
 	private final Image src;
+	private final int split;
 	private final int tileSize;
-	private int holex, holey;
 
 	/**
 	 * Creates the model for the given image, splitting it into split x split tiles.
 	 * @param image the image to use, must not be <code>null</code>.
 	 * @param split the split level (3, 4 or 5)
-	 * @throws IOException in case of error
 	 */
-	public Model(final Image image, final int split) throws IOException {
+	public Model(final Image image, final int split) {
 		src = image;
-		template = new Image[split][split];
-		elements = new Image[split][split];
-		painted = new boolean[split][split];
+		this.split = split;
+		board = new Board(split);
+		painted = new boolean[split*split];
 		tileSize = src.getWidth() / split;
-		for (int y = 0; y < split; y++) {
-			for (int x = 0; x < split; x++) {
-				if (x < split - 1 || y < split - 1) {
-					template[y][x] = Image.createImage(src, x*tileSize, y*tileSize, tileSize, tileSize, Sprite.TRANS_NONE);
-				}
-			}
-		}
 	}
 	
 	/**
@@ -68,50 +57,68 @@ public class Model implements Constants {
 	 * @return the number of tiles per row/column.
 	 */
 	public int getTileCount() {
-		return template.length;
+		return split;
 	}
-	
+
+	/**
+	 * Returns the board holding the game state.
+	 * @return the board, never <code>null</code>.
+	 */
+	public Board getBoard() {
+		return board;
+	}
+
+	/**
+	 * Returns a copy of the board state.
+	 * @return a copy of the board state, never <code>null</code>.
+	 * @see Board#getState()
+	 */
+	public byte[] getState() {
+		return board.getState();
+	}
+
 	/**
-	 * Returns the tile at the given position.
+	 * Checks whether there is a tile at the given position.
 	 * @param x the x position
 	 * @param y the y position
-	 * @return the tile, or <code>null</code> if the hole is at this position.
+	 * @return <code>true</code> if there is a tile, <code>false</code> if
+	 * the hole is at this position (or the position is outside the board).
 	 */
-	public Image getTile(final int x, final int y) {
-		final Image result;
-		if (x < template.length && y < template.length) {
-			result = elements[y][x];			
-		} else {
-			result = null;
-		}
-		return result;
+	public boolean isTile(final int x, final int y) {
+		return x < split && y < split && board.getTile(x, y) != split*split-1;
+	}
+
+	/**
+	 * Paints the tile at the given position by drawing its region
+	 * of the original image. There must be a tile at the position.
+	 * @param g the graphics to paint on, must not be <code>null</code>.
+	 * @param x the x position of the tile
+	 * @param y the y position of the tile
+	 * @param dx the x coordinate to paint the tile at
+	 * @param dy the y coordinate to paint the tile at
+	 */
+	public void paintTile(final Graphics g, final int x, final int y, final int dx, final int dy) {
+		final int i = board.getTile(x, y);
+		g.drawRegion(src, (i%split)*tileSize, (i/split)*tileSize, tileSize, tileSize, Sprite.TRANS_NONE, dx, dy, POSITIONING);
 	}
 
 	/**
 	 * Reset the model state and reshuffle the tiles.
+	 * @see Board#shuffle()
 	 */
 	public void reset() {
-		for (int y = 0; y < template.length; y++) {
-			for (int x = 0; x < template.length; x++) {
-				elements[y][x] = template[y][x];
-				painted[y][x] = false;
-			}
-		}
-		int l = template.length-1;
-		holex = holey = l;
-		int last = 0;
-		l++;
-		for (int i = l*l*10; i > 0; i--) {
-			last = randomSwap(last);
-		}
-		l--;
-		// move empty field to right, bottom
-		while (holex < l) {
-			moveHole(holex+1, holey);
-		}
-		while (holey < l) {
-			moveHole(holex, holey+1);
-		}
+		board.shuffle();
+		clearPainted();
+	}
+
+	/**
+	 * Reset the model state to the given board.
+	 * @param state the board state (see {@link #getState()}), must not
+	 * be <code>null</code>; the array is copied.
+	 */
+	public void reset(final byte[] state) {
+		board.setState(state);
+		clearPainted();
 	}
 	
 	/**
@@ -119,14 +126,12 @@ public class Model implements Constants {
 	 * new position.
 	 * @param sx the new x position of the hole
 	 * @param sy the new y position of the hole
+	 * @see Board#moveHole(int, int)
 	 */
 	public void moveHole(final int sx, final int sy) {
-		elements[holey][holex] = elements[sy][sx];
-		elements[sy][sx] = null;
-		painted[sy][sx] = false;
-		painted[holey][holex] = false;
-		holex = sx;
-		holey = sy;
+		painted[board.getHoleY()*split+board.getHoleX()] = false;
+		painted[sy*split+sx] = false;
+		board.moveHole(sx, sy);
 	}
 	
 	/**
@@ -135,7 +140,16 @@ public class Model implements Constants {
 	 * @param y the y position of the tile
 	 */
 	public void setPainted(final int x, final int y) {
-		painted[y][x] = true;
+		painted[y*split+x] = true;
+	}
+
+	/**
+	 * Indicates that the tile at the given position needs to be painted again.
+	 * @param x the x position of the tile
+	 * @param y the y position of the tile
+	 */
+	public void clearPainted(final int x, final int y) {
+		painted[y*split+x] = false;
 	}
 
 	/**
@@ -145,7 +159,7 @@ public class Model implements Constants {
 	 * @return <code>true</code> if the tile has been painted
 	 */
 	public boolean isPainted(final int x, final int y) {
-		return painted[y][x];
+		return painted[y*split+x];
 	}
 
 	/**
@@ -153,35 +167,13 @@ public class Model implements Constants {
 	 * @return <code>true</code> if the puzzle has been solved.
 	 */
 	public boolean isSolved() {
-		final int max = template.length-1;
-		if (holex == max && holey == max) {
-			for (int y = template.length-1; y >= 0; y--) {
-				for (int x = template.length-1; x >= 0; x--) {
-					if (template[y][x] != elements[y][x]) {
-						return false;
-					}
-				}
-			}
-			return true;
-		} else {
-			return false;
-		}
+		return board.isSolved();
 	}
 
-	/**
-	 * Move the hole into a random direction.
-	 * @param last the last position index of the hole
-	 * @return the last position index of the hole
-	 */
-	protected int randomSwap(final int last) {
-		int move = RANDOM.nextInt(4), sx, sy;
-		do {			
-			move = (move+1)%4;
-			sx = holex+CROSSHAIR[move][0];
-			sy = holey+CROSSHAIR[move][1];
-		} while (move == last || sx < 0 || sy < 0 || sx == template.length || sy == template.length);
-		moveHole(sx, sy);
-		return (move+2)%4;
+	private void clearPainted() {
+		for (int i = painted.length-1; i >= 0; i--) {
+			painted[i] = false;
+		}
 	}
 
 }
@@ -0,0 +1,108 @@
+package de.engehausen.mobile.puzzling;
+
+import java.lang.ref.WeakReference;
+import java.util.Vector;
+
+/**
+ * A small cache of the models of recently played images, keyed by the
+ * image source and the split level, so that replaying an image (also at
+ * another split level) does not load it again.
+ * <p>The most recently used model is held strongly, the others only weakly
+ * (CLDC has no soft references), so their big images can be reclaimed when
+ * memory is short. At most {@link #SIZE} models are kept; the least recently
+ * used ones are evicted first.</p>
+ */
+public class ModelCache {
+
+	private static final int SIZE = 6;
+
+	private final Vector entries;
+	private Model recent;
+
+	/**
+	 * Creates the cache.
+	 */
+	public ModelCache() {
+		entries = new Vector(SIZE);
+	}
+
+	/**
+	 * Returns the model for the given image source and split level. If
+	 * only a model of another split level is cached, a model of the given
+	 * split level is created for its image. The model becomes the most
+	 * recently used one.
+	 * @param key the (normalized) image source, must not be <code>null</code>.
+	 * @param split the split level (3, 4 or 5)
+	 * @return the model, or <code>null</code> if the image is not cached.
+	 */
+	public synchronized Model get(final String key, final int split) {
+		Model result = null;
+		for (int i = 0; i < entries.size() && result == null; i++) {
+			final Entry entry = (Entry) entries.elementAt(i);
+			final Model model = (Model) entry.model.get();
+			if (model == null) {
+				entries.removeElementAt(i--);
+			} else if (entry.key.equals(key)) {
+				if (model.getTileCount() == split) {
+					entries.removeElementAt(i);
+					result = model;
+				} else {
+					result = new Model(model.getSourceImage(), split);
+				}
+			}
+		}
+		if (result != null) {
+			put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the given model, which becomes the most recently used one.
+	 * @param key the (normalized) image source, must not be <code>null</code>.
+	 * @param model the model, must not be <code>null</code>.
+	 */
+	public synchronized void put(final String key, final Model model) {
+		for (int i = entries.size()-1; i >= 0; i--) {
+			final Entry entry = (Entry) entries.elementAt(i);
+			if (entry.model.get() == model) {
+				entries.removeElementAt(i);
+			}
+		}
+		entries.insertElementAt(new Entry(key, model), 0);
+		if (entries.size() > SIZE) {
+			entries.removeElementAt(SIZE);
+		}
+		recent = model;
+	}
+
+	/**
+	 * Removes the models of the given image source, e.g. because
+	 * the source has been changed.
+	 * @param key the (normalized) image source, must not be <code>null</code>.
+	 */
+	public synchronized void remove(final String key) {
+		for (int i = entries.size()-1; i >= 0; i--) {
+			final Entry entry = (Entry) entries.elementAt(i);
+			if (entry.key.equals(key)) {
+				if (entry.model.get() == recent) {
+					recent = null;
+				}
+				entries.removeElementAt(i);
+			}
+		}
+	}
+
+	private static class Entry {
+
+		private final String key;
+		private final WeakReference model;
+
+		public Entry(final String aKey, final Model aModel) {
+			key = aKey;
+			model = new WeakReference(aModel);
+		}
+
+	}
+
+}
@@ -0,0 +1,178 @@
+package de.engehausen.mobile.puzzling;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+
+/**
+ * Keeps the bytes of an interrupted download on the device, so that the
+ * download can be resumed with a <code>Range</code> request later. Only
+ * the most recent interrupted download is kept, in the "puzzling-partial"
+ * record store: the first record holds the URL, the validator of the
+ * resource (a strong entity tag or the last modification date) and the
+ * number of bytes, the following records hold the bytes in chunks of at
+ * most 15 kilobytes.
+ * <p>If there is a problem with the record store, nothing is kept.</p>
+ */
+public final class PartialDownloads {
+
+	private static final String STORE_NAME = "puzzling-partial";
+	private static final int HEADER_RECORD = 1;
+	private static final int CHUNK_SIZE = 15*1024;
+
+	private RecordStore store;
+	private String url;
+	private String validator;
+	private int count;
+
+	/**
+	 * Creates an instance of the partial downloads. If there is a problem
+	 * with the record store, an instance that keeps nothing is returned.
+	 * @return an instance of the partial downloads.
+	 */
+	public static PartialDownloads createPartialDownloads() {
+		RecordStore store;
+		try {
+			store = RecordStore.openRecordStore(STORE_NAME, true);
+		} catch (RecordStoreException e) {
+			store = null;
+		}
+		return new PartialDownloads(store);
+	}
+
+	/**
+	 * Creates the partial downloads backed by the given record store.
+	 * @param aStore the record store, may be <code>null</code> for an
+	 * instance not keeping anything
+	 */
+	private PartialDownloads(final RecordStore aStore) {
+		store = aStore;
+		if (store != null) {
+			try {
+				if (store.getNumRecords() > 0) {
+					final DataInputStream in = new DataInputStream(new ByteArrayInputStream(store.getRecord(HEADER_RECORD)));
+					url = in.readUTF();
+					validator = in.readUTF();
+					count = in.readInt();
+				}
+			} catch (RecordStoreException e) {
+				clear();
+			} catch (IOException e) {
+				clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the validator of the partial download of the given URL.
+	 * @param anURL the URL, must not be <code>null</code>.
+	 * @return the validator, or <code>null</code> if there is no partial
+	 * download of the URL.
+	 */
+	public synchronized String getValidator(final String anURL) {
+		return anURL.equals(url) ? validator : null;
+	}
+
+	/**
+	 * Reads the bytes of the partial download of the given URL.
+	 * @param anURL the URL, must not be <code>null</code>.
+	 * @param out the stream receiving the bytes, must not be <code>null</code>.
+	 * @return <code>true</code> if the bytes were read, <code>false</code> if
+	 * there is no partial download of the URL (or it could not be read).
+	 */
+	public synchronized boolean read(final String anURL, final ByteArrayOutputStream out) {
+		boolean result = false;
+		if (anURL.equals(url)) {
+			try {
+				final byte[] chunk = new byte[CHUNK_SIZE];
+				for (int id = HEADER_RECORD+1, read = 0; read < count; id++) {
+					final int len = store.getRecord(id, chunk, 0);
+					out.write(chunk, 0, len);
+					read += len;
+				}
+				result = true;
+			} catch (RecordStoreException e) {
+				clear();
+			} catch (ArrayIndexOutOfBoundsException e) {
+				clear();
+			}
+			if (!result) {
+				out.reset();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Keeps the bytes of an interrupted download, replacing any
+	 * previously kept download.
+	 * @param anURL the URL, must not be <code>null</code>.
+	 * @param aValidator the validator of the resource, must not be <code>null</code>.
+	 * @param data the bytes received, must not be <code>null</code>.
+	 */
+	public synchronized void save(final String anURL, final String aValidator, final byte[] data) {
+		clear();
+		if (store != null) {
+			try {
+				final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				final DataOutputStream out = new DataOutputStream(bytes);
+				out.writeUTF(anURL);
+				out.writeUTF(aValidator);
+				out.writeInt(data.length);
+				out.close();
+				final byte[] header = bytes.toByteArray();
+				// the store is new, so the header gets the first record id
+				store.addRecord(header, 0, header.length);
+				for (int i = 0; i < data.length; i += CHUNK_SIZE) {
+					store.addRecord(data, i, i+CHUNK_SIZE<data.length?CHUNK_SIZE:data.length-i);
+				}
+				url = anURL;
+				validator = aValidator;
+				count = data.length;
+			} catch (RecordStoreException e) {
+				// e.g. full; keep nothing
+				clear();
+			} catch (IOException e) {
+				clear();
+			}
+		}
+	}
+
+	/**
+	 * Forgets the partial download of the given URL, e.g. because
+	 * it has been completed.
+	 * @param anURL the URL, must not be <code>null</code>.
+	 */
+	public synchronized void remove(final String anURL) {
+		if (anURL.equals(url)) {
+			clear();
+		}
+	}
+
+	/**
+	 * Deletes the kept download by recreating the record store, so that
+	 * record ids start at one again.
+	 */
+	private void clear() {
+		url = null;
+		validator = null;
+		count = 0;
+		if (store != null) {
+			try {
+				if (store.getNumRecords() > 0) {
+					store.closeRecordStore();
+					RecordStore.deleteRecordStore(STORE_NAME);
+					store = RecordStore.openRecordStore(STORE_NAME, true);
+				}
+			} catch (RecordStoreException e) {
+				store = null;
+			}
+		}
+	}
+
+}
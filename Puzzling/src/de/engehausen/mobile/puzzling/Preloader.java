@@ -0,0 +1,119 @@
+package de.engehausen.mobile.puzzling;
+
+import javax.microedition.lcdui.Image;
+
+/**
+ * Loads the big image of the selected tile button in the background and
+ * puts its model into the {@link ModelCache}, so that starting the game
+ * only hands over the model. Only the latest selection is preloaded: a
+ * preload not started yet is replaced by a new selection, a preload
+ * already running is finished and its model is kept in the cache.
+ */
+public class Preloader implements Runnable {
+
+	private static final int NONE = -1;
+
+	private final TileButtons buttons;
+	private final ModelCache models;
+	private int pending;
+	private int pendingSplit;
+	private String active;
+	private boolean started;
+
+	/**
+	 * Creates the preloader. Its thread is started with the first selection.
+	 * @param someButtons the tile buttons providing the images, must not be <code>null</code>.
+	 * @param someModels the cache receiving the models, must not be <code>null</code>.
+	 */
+	public Preloader(final TileButtons someButtons, final ModelCache someModels) {
+		buttons = someButtons;
+		models = someModels;
+		pending = NONE;
+	}
+
+	/**
+	 * Preloads the image at the given index, replacing a preload
+	 * not started yet.
+	 * @param idx the index of the image
+	 * @param split the split level (3, 4 or 5) to create the model for
+	 */
+	public synchronized void select(final int idx, final int split) {
+		pending = idx;
+		pendingSplit = split;
+		if (!started) {
+			started = true;
+			final Thread thread = new Thread(this);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.start();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Returns the model for the image at the given index, waiting for
+	 * a running preload of the image. A preload of the image not started
+	 * yet is cancelled, as the caller is to load the image itself.
+	 * @param idx the index of the image
+	 * @param split the split level (3, 4 or 5)
+	 * @return the model, or <code>null</code> if the image has not been preloaded.
+	 */
+	public Model take(final int idx, final int split) {
+		final String key = buttons.getKey(idx);
+		if (key == null) {
+			return null;
+		}
+		synchronized (this) {
+			if (pending == idx) {
+				pending = NONE;
+			}
+			while (key.equals(active)) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					// ignore and check again
+				}
+			}
+		}
+		return models.get(key, split);
+	}
+
+	// non-javadoc: see interface
+	public void run() {
+		while (true) {
+			final int idx;
+			final int split;
+			final String key;
+			synchronized (this) {
+				while (pending == NONE) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// ignore and check again
+					}
+				}
+				idx = pending;
+				split = pendingSplit;
+				pending = NONE;
+				key = buttons.getKey(idx);
+				active = key;
+			}
+			if (key != null) {
+				try {
+					if (models.get(key, split) == null) {
+						final Image img = buttons.getBigImage(idx);
+						// the source may have been changed meanwhile
+						if (img != null && !buttons.isPlaceholder(img) && key.equals(buttons.getKey(idx))) {
+							models.put(key, new Model(img, split));
+						}
+					}
+				} finally {
+					synchronized (this) {
+						active = null;
+						notifyAll();
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,164 @@
+package de.engehausen.mobile.puzzling;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Hashtable;
+
+import javax.microedition.lcdui.Image;
+import javax.microedition.rms.RecordEnumeration;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+
+/**
+ * Persistent store of the thumbnails shown on the menu, backed by the
+ * "puzzling-thumbnails" record store. Each record holds the image source,
+ * the thumbnail size and the pixels as RGB bytes.
+ * <p>All thumbnails are read in one go when the menu is first shown
+ * (see {@link #load(String[])}), so no image needs to be loaded or decoded
+ * for the menu of a known set of image sources. If there is a problem with
+ * the record store, a store that does not keep anything is returned.</p>
+ */
+public final class ThumbnailCache {
+
+	private static final String STORE_NAME = "puzzling-thumbnails";
+
+	private final RecordStore store;
+	private final Hashtable ids;
+
+	/**
+	 * Creates an instance of the thumbnail cache. If there is a problem
+	 * with the record store, a cache that stores nothing is returned.
+	 * @return an instance of the thumbnail cache.
+	 */
+	public static ThumbnailCache createThumbnailCache() {
+		RecordStore store;
+		try {
+			store = RecordStore.openRecordStore(STORE_NAME, true);
+		} catch (RecordStoreException e) {
+			store = null;
+		}
+		return new ThumbnailCache(store);
+	}
+
+	/**
+	 * Creates the thumbnail cache backed by the given record store.
+	 * @param aStore the record store, may be <code>null</code> for a cache
+	 * not storing anything
+	 */
+	private ThumbnailCache(final RecordStore aStore) {
+		store = aStore;
+		ids = new Hashtable();
+	}
+
+	/**
+	 * Reads the thumbnails of the given image sources. Thumbnails of other
+	 * sources (e.g. of removed sources) are deleted.
+	 * @param sources the image sources, must not be <code>null</code>; may
+	 * contain <code>null</code> elements.
+	 * @return the thumbnails, with the indices of the image sources; elements
+	 * are <code>null</code> for sources without a stored thumbnail.
+	 */
+	public synchronized Image[] load(final String[] sources) {
+		final Image[] result = new Image[sources.length];
+		if (store != null) {
+			ids.clear();
+			try {
+				final RecordEnumeration e = store.enumerateRecords(null, null, false);
+				try {
+					int[] rgb = new int[0];
+					while (e.hasNextElement()) {
+						final int id = e.nextRecordId();
+						final DataInputStream in = new DataInputStream(new ByteArrayInputStream(store.getRecord(id)));
+						final String source = in.readUTF();
+						final int size = in.readShort();
+						boolean used = false;
+						for (int i = sources.length-1; i >= 0; i--) {
+							if (source.equals(sources[i])) {
+								if (result[i] == null) {
+									if (rgb.length < size*size) {
+										rgb = new int[size*size];
+									}
+									for (int j = 0; j < size*size; j++) {
+										rgb[j] = 0xff000000|(in.readUnsignedByte()<<16)|(in.readUnsignedByte()<<8)|in.readUnsignedByte();
+									}
+									result[i] = Image.createRGBImage(rgb, size, size, false);
+									used = true;
+								}
+								// the same source may be used more than once
+								for (int k = i-1; k >= 0; k--) {
+									if (source.equals(sources[k])) {
+										result[k] = result[i];
+									}
+								}
+								break;
+							}
+						}
+						if (used) {
+							ids.put(source, new Integer(id));
+						} else {
+							store.deleteRecord(id);
+						}
+					}
+				} finally {
+					e.destroy();
+				}
+			} catch (RecordStoreException e) {
+				// ignore, thumbnails are loaded from the images
+			} catch (IOException e) {
+				// ignore, thumbnails are loaded from the images
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Removes the thumbnail of the given image source, e.g. because
+	 * the image has changed.
+	 * @param source the image source, must not be <code>null</code>.
+	 */
+	public synchronized void remove(final String source) {
+		final Integer id = (Integer) ids.remove(source);
+		if (store != null && id != null) {
+			try {
+				store.deleteRecord(id.intValue());
+			} catch (RecordStoreException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Stores the thumbnail for the given image source, unless a thumbnail
+	 * is already stored for it.
+	 * @param source the image source, must not be <code>null</code>.
+	 * @param pixels the pixels of the thumbnail, must not be <code>null</code>.
+	 * @param size the width (and height) of the thumbnail
+	 */
+	public synchronized void put(final String source, final int[] pixels, final int size) {
+		if (store != null && !ids.containsKey(source)) {
+			try {
+				final ByteArrayOutputStream bytes = new ByteArrayOutputStream(3*size*size+source.length()+4);
+				final DataOutputStream out = new DataOutputStream(bytes);
+				out.writeUTF(source);
+				out.writeShort(size);
+				for (int i = 0; i < size*size; i++) {
+					final int p = pixels[i];
+					out.writeByte(p>>16);
+					out.writeByte(p>>8);
+					out.writeByte(p);
+				}
+				out.close();
+				final byte[] record = bytes.toByteArray();
+				ids.put(source, new Integer(store.addRecord(record, 0, record.length)));
+			} catch (RecordStoreException e) {
+				// ignore
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+}
@@ -1,41 +1,80 @@
 package de.engehausen.mobile.puzzling;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
+import java.util.Hashtable;
 
 import javax.microedition.io.Connector;
-import javax.microedition.io.HttpConnection;
 import javax.microedition.lcdui.Graphics;
 import javax.microedition.lcdui.Image;
 import javax.microedition.lcdui.game.Sprite;
 
+import de.engehausen.mobile.puzzling.core.ImageInfo;
+import de.engehausen.mobile.puzzling.core.ImageKeys;
+import de.engehausen.mobile.puzzling.core.ImageScaler;
+import de.engehausen.mobile.puzzling.core.PngDecoder;
+
 /**
  * A tile matrix with the images that can be "played".
+ * <p>Images are shared between the tiles: tiles whose sources have the
+ * same normalized URL are loaded once, and sources whose content (the
+ * encoded image) is the same share one big image and one thumbnail.</p>
  */
 public class TileButtons extends AbstractButtonGroup implements Constants {
 
 	private static final String HTTP_PREFIX = "http:";
+	private static final int BAND_PIXELS = 8192;
+	private static final int BUFFER_SIZE = 2048;
+	private static final int DECODE_HEADROOM = 2;
+	private static final long REVALIDATE_AGE = 24L*60L*60L*1000L;
+	private static final int BIG = 0;
+	private static final int THUMBNAIL = 1;
+	private static final int[] SIZES = { 320, 64 };
 	
 	private final String[] sources;
+	private final String[] keys;
+	private final Hashtable contents;
+	private final Hashtable shared;
 	private final Image[] images;
 	private final WeakReference[] bigimages;
 	private final boolean[] painted;
 	private final MenuCanvas canvas;
 	private final int height;
 	private final Image wait;
+	private final ImageCache cache;
+	private final ThumbnailCache thumbnails;
+	private boolean restored;
+	private final ImageScaler[] scalers;
+	private int[] pixels;
+	private Image[] waitImages;
+	private Image[] rejectImages;
+	private final ImageLoader loader;
+	private final DownloadManager downloads;
 
 	/**
 	 * Creates the tile buttons.
 	 * @param aDatabase the database providing the image sources, must not be <code>null</code>.
+	 * @param aCache the cache for the big images, must not be <code>null</code>.
+	 * @param someThumbnails the cache for the thumbnails, must not be <code>null</code>.
 	 * @param parent the menu canvas using the tile buttons, must not be <code>null</code>.
 	 * @param rectangles the rectangles for the tile buttons, must not be <code>null</code>.
 	 * @throws IOException in case of error
 	 */
-	public TileButtons(final Database aDatabase, final MenuCanvas parent, final Rectangle[] rectangles) throws IOException {
+	public TileButtons(final Database aDatabase, final ImageCache aCache, final ThumbnailCache someThumbnails, final MenuCanvas parent, final Rectangle[] rectangles) throws IOException {
 		super(rectangles);
 		canvas = parent;
+		cache = aCache;
+		thumbnails = someThumbnails;
 		sources = aDatabase.getSources();
+		keys = new String[sources.length];
+		for (int i = sources.length-1; i >= 0; i--) {
+			keys[i] = sources[i] != null ? ImageKeys.normalize(sources[i]) : null;
+		}
+		contents = new Hashtable();
+		shared = new Hashtable();
 		
 		images = new Image[rectangles.length];
 		bigimages = new WeakReference[rectangles.length];
@@ -49,6 +88,13 @@ public class TileButtons extends AbstractButtonGroup implements Constants {
 		}
 		height = tmp+64;
 		wait = Image.createImage("/clock.png");
+		scalers = new ImageScaler[SIZES.length];
+		for (int i = 0; i < SIZES.length; i++) {
+			scalers[i] = new ImageScaler();
+		}
+		pixels = new int[BAND_PIXELS];
+		loader = new ImageLoader(this, parent);
+		downloads = new DownloadManager(parent, PartialDownloads.createPartialDownloads());
 	}
 
 	/**
@@ -71,12 +117,24 @@ public class TileButtons extends AbstractButtonGroup implements Constants {
 
 	/**
 	 * Sets the image source at the given index. This normally
-	 * <i>writes through to the "database"</i>.
+	 * <i>writes through to the "database"</i>. A download of the
+	 * previous source is cancelled if no other index uses it.
 	 * @param idx the index of the image source. 
 	 * @param source the image source string
 	 */
 	public void set(final int idx, final String source) {
+		final String old = sources[idx];
 		sources[idx] = source;
+		keys[idx] = source != null ? ImageKeys.normalize(source) : null;
+		if (old != null && !old.equals(source)) {
+			boolean used = false;
+			for (int i = sources.length-1; i >= 0; i--) {
+				used |= old.equals(sources[i]);
+			}
+			if (!used) {
+				downloads.cancel(old);
+			}
+		}
 		images[idx] = null;
 		bigimages[idx] = null;
 		painted[idx] = false;
@@ -106,15 +164,39 @@ public class TileButtons extends AbstractButtonGroup implements Constants {
 		return sources[idx];
 	}
 
+	/**
+	 * Returns the normalized image source URL at the given index;
+	 * sources with the same normalized URL are the same.
+	 * @param idx the index of the image source
+	 * @return the normalized image source (may be <code>null</code>).
+	 */
+	public String getKey(final int idx) {
+		return keys[idx];
+	}
+
 	// non-javadoc: see superclass
 	public void paint(final Graphics g) {
+		if (!restored) {
+			restoreThumbnails();
+		}
 		for (int i = 0; i < 16; i++) {
 			if (!painted[i]) {
 				if (sources[i] != null) {
 					final Image img = getImage(i);
 					if (img != null) {
-						g.drawImage(img, 20+(i%4)*72, (i/4)*72, Sprite.TRANS_NONE);	
+						final int x = 20+(i%4)*72;
+						final int y = (i/4)*72;
+						g.drawImage(img, x, y, Sprite.TRANS_NONE);	
 						painted[i] = (img != wait); // if wait img then still loading...
+						if (!painted[i]) {
+							final int progress = downloads.getProgress(sources[i]);
+							if (progress >= 0) {
+								g.setColor(GRAY);
+								g.fillRect(x+4, y+56, 56, 4);
+								g.setColor(WHITE);
+								g.fillRect(x+4, y+56, progress*56/100, 4);
+							}
+						}
 					}
 				} else {
 					g.setColor(BLACK);
@@ -128,6 +210,20 @@ public class TileButtons extends AbstractButtonGroup implements Constants {
 		}
 	}
 
+	/**
+	 * Reads all stored thumbnails, so that only images of new sources
+	 * need to be loaded.
+	 */
+	private void restoreThumbnails() {
+		restored = true;
+		final Image[] stored = thumbnails.load(sources);
+		for (int i = stored.length-1; i >= 0; i--) {
+			if (images[i] == null) {
+				images[i] = stored[i];
+			}
+		}
+	}
+
 	/**
 	 * Returns the big image used for playing the tiles.
 	 * @param idx the index of the image
@@ -135,73 +231,236 @@ public class TileButtons extends AbstractButtonGroup implements Constants {
 	 */
 	public Image getBigImage(final int idx) {
 		Image result = (Image) (bigimages[idx]!=null?bigimages[idx].get():null);
-		if (result == null && sources[idx] != null) {
+		final String key = keys[idx];
+		if (result == null && key != null) {
+			// wait for a loader thread already loading the image
+			loader.acquire(key);
 			try {
-				final InputStream stream = getImageInputStream(sources[idx]);
-				final Image img;
-				try {
-					img = Image.createImage(stream);
-				} finally {
-					stream.close();
+				result = (Image) (bigimages[idx]!=null?bigimages[idx].get():null);
+				if (result == null) {
+					result = load(idx)[BIG];
 				}
-				result = scaleImage(img, 320, 320);
-				bigimages[idx]= new WeakReference(result);
-			} catch (IOException e) {
-				result = scaleImage(wait, 320, 320);
-				bigimages[idx]= new WeakReference(result);
-			} catch (SecurityException e) {
-				result = scaleImage(wait, 320, 320);
-				bigimages[idx]= new WeakReference(result);
+			} finally {
+				loader.release(key);
 			}
 		}
 		return result;
 	}
-	
-	private InputStream getImageInputStream(final String source) throws IOException {
-		final InputStream result;
-		if (source.charAt(0) == '/') {
-			result = getClass().getResourceAsStream(source);
-		} else if (source.startsWith(HTTP_PREFIX)) {
-			result = getHttpInputStream(source);
-		} else {
-			// unknown, let the connector try it...
-			result = Connector.openInputStream(source);
+
+	/**
+	 * Loads the image at the given index before the other requested images,
+	 * as it is the one needed next for playing.
+	 * @param idx the index of the image
+	 */
+	public void prioritize(final int idx) {
+		loader.prioritize(idx);
+	}
+
+	/**
+	 * Loads the image at the given index and scales it to the size of the
+	 * big image and the thumbnail in one pass. Both are remembered. The
+	 * big image is taken from the image cache if possible, otherwise the
+	 * source is loaded and decoded and the big image is added to the cache.
+	 * Cached images from HTTP sources are revalidated with a conditional
+	 * request once they are older than {@link #REVALIDATE_AGE}.
+	 * The images are also given to all other waiting indices with the same
+	 * normalized source. Images already loaded for a source with the same
+	 * content are used without loading them again.
+	 * @param idx the index of the image
+	 * @return the big image and the thumbnail (see {@link #SIZES})
+	 */
+	private Image[] load(final int idx) {
+		final String source = sources[idx];
+		final String key = keys[idx];
+		Image[] result = getShared((String) contents.get(key));
+		if (result == null && cache.contains(source)) {
+			if (source.startsWith(HTTP_PREFIX) && cache.isStale(source, REVALIDATE_AGE)) {
+				result = fetch(source, true);
+			}
+			if (result == null) {
+				result = loadCached(source);
+			}
+		}
+		if (result == null) {
+			result = fetch(source, false);
+			if (result == null) {
+				result = getWaitImages();
+			}
+		}
+		final WeakReference ref = new WeakReference(result[BIG]);
+		for (int i = sources.length-1; i >= 0; i--) {
+			// the source at the index may have been changed while loading
+			if (key.equals(keys[i]) && (i == idx || images[i] == wait || images[i] == null)) {
+				bigimages[i] = ref;
+				images[i] = result[THUMBNAIL];
+			}
 		}
 		return result;
 	}
-	
+
 	/**
-	 * Retrieve a resource via HTTP. The method tries to deal with
-	 * redirects.
-	 * @param url the URL of the resource to fetch
-	 * @return the input stream with the resources' data
-	 * @throws IOException in case of error
+	 * Loads and scales the image of the given source.
+	 * @param source the image source, must not be <code>null</code>.
+	 * @param conditional whether the cached image is to be revalidated, i.e.
+	 * whether the image is only to be loaded if it has been modified
+	 * @return the big image and the thumbnail, or <code>null</code> if the
+	 * image has not been modified or could not be loaded.
 	 */
-	private InputStream getHttpInputStream(final String url) throws IOException {
+	private Image[] fetch(final String source, final boolean conditional) {
+		Image[] result = null;
 		try {
-			final HttpConnection conn = (HttpConnection) Connector.open(url);
-			try {
-				final int status = conn.getResponseCode();
-				final InputStream result;
-				if (status == HttpConnection.HTTP_OK) {
-					result = conn.openInputStream();
-				} else if (status >= HttpConnection.HTTP_MULT_CHOICE && status < HttpConnection.HTTP_BAD_REQUEST) {
-					final String loc = conn.getHeaderField("Location");
-					if (loc != null) {
-						result = getHttpInputStream(loc);
-					} else {
-						throw new IOException();
+			if (source.startsWith(HTTP_PREFIX)) {
+				final Download download = conditional
+					? downloads.download(source, cache.getETag(source), cache.getLastModified(source))
+					: downloads.download(source, null, null);
+				final byte[] data = download.getData();
+				if (data != null) {
+					if (conditional) {
+						thumbnails.remove(source);
 					}
+					result = share(data, source, download.getETag(), download.getLastModified());
 				} else {
-					throw new IOException();
-				}			
-				return result;
-			} finally {
-				conn.close();			
-			}			
-		} catch (IllegalArgumentException e) {
-			throw new IOException(e.getMessage());
+					cache.validated(source, download.getETag());
+				}
+			} else {
+				result = share(readFully(getImageInputStream(source)), source, null, null);
+			}
+		} catch (IOException e) {
+			// not available, use the cached or the wait image
+		} catch (SecurityException e) {
+			// not allowed, use the cached or the wait image
+		} catch (OutOfMemoryError e) {
+			// the image is too big to be decoded on this device
 		}
+		return result;
+	}
+
+	/**
+	 * Returns the images for the given image data. If images with the same
+	 * content have been loaded before, and their big image is still in
+	 * memory, they are used (and stored for the given source); otherwise
+	 * the data is {@link #decode(byte[], String, String, String) decoded}.
+	 * The reject image is neither shared nor stored for other sources, so
+	 * that it does not outlive a later successful decode.
+	 * @param data the encoded image, must not be <code>null</code>.
+	 * @param source the image source, must not be <code>null</code>.
+	 * @param etag the entity tag of the source, may be <code>null</code>.
+	 * @param lastModified the last modification date of the source, may be <code>null</code>.
+	 * @return the big image and the thumbnail
+	 * @throws IOException if a PNG image cannot be decoded
+	 */
+	private Image[] share(final byte[] data, final String source, final String etag, final String lastModified) throws IOException {
+		final String content = ImageKeys.hash(data, 0, data.length);
+		contents.put(ImageKeys.normalize(source), content);
+		Image[] result = getShared(content);
+		if (result == null) {
+			result = decode(data, source, etag, lastModified);
+			if (!isRejectImage(result[BIG])) {
+				shared.put(content, new Object[] { new WeakReference(result[BIG]), result[THUMBNAIL] });
+			}
+		} else if (!isRejectImage(result[BIG])) {
+			final int[] rgb = new int[SIZES[BIG]*SIZES[BIG]];
+			result[BIG].getRGB(rgb, 0, SIZES[BIG], 0, 0, SIZES[BIG], SIZES[BIG]);
+			cache.put(source, rgb, rgb.length, etag, lastModified);
+			result[THUMBNAIL].getRGB(rgb, 0, SIZES[THUMBNAIL], 0, 0, SIZES[THUMBNAIL], SIZES[THUMBNAIL]);
+			thumbnails.put(source, rgb, SIZES[THUMBNAIL]);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the images shared for the given content.
+	 * @param content the key of the content, may be <code>null</code>.
+	 * @return the big image and the thumbnail, or <code>null</code> if
+	 * there are none (or the big image is not in memory anymore).
+	 */
+	private Image[] getShared(final String content) {
+		Image[] result = null;
+		final Object[] entry = content != null ? (Object[]) shared.get(content) : null;
+		if (entry != null) {
+			final Image big = (Image) ((WeakReference) entry[BIG]).get();
+			if (big != null) {
+				result = new Image[SIZES.length];
+				result[BIG] = big;
+				result[THUMBNAIL] = (Image) entry[THUMBNAIL];
+			} else {
+				shared.remove(content);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Decodes and scales the given image data. The header of PNG and JPEG
+	 * data is read first to estimate the memory needed for decoding. PNG
+	 * images which would not fit into the free memory are decoded row by
+	 * row straight into the scalers (see {@link PngDecoder}), which needs
+	 * the same memory whatever their size; they are subsampled as far as
+	 * they stay at least as big as the big image. JPEG images which would
+	 * not fit are not decoded but replaced by the reject image.
+	 * @param data the encoded image, must not be <code>null</code>.
+	 * @param key the key to store the big image under in the image cache,
+	 * must not be <code>null</code>.
+	 * @param etag the entity tag of the source, may be <code>null</code>.
+	 * @param lastModified the last modification date of the source, may be <code>null</code>.
+	 * @return the big image and the thumbnail
+	 * @throws IOException if a PNG image cannot be decoded
+	 */
+	private Image[] decode(final byte[] data, final String key, final String etag, final String lastModified) throws IOException {
+		final ImageInfo info = ImageInfo.read(data, 0, data.length);
+		int strategy = ImageInfo.DIRECT;
+		if (info != null) {
+			strategy = info.getStrategy(getDecodeBudget());
+			if (strategy != ImageInfo.DIRECT) {
+				// try again after collecting garbage
+				System.gc();
+				strategy = info.getStrategy(getDecodeBudget());
+			}
+		}
+		if (strategy == ImageInfo.DIRECT) {
+			return scaleImage(Image.createImage(data, 0, data.length), key, etag, lastModified);
+		} else if (strategy == ImageInfo.SUBSAMPLE) {
+			final PngDecoder decoder = new PngDecoder(new ByteArrayInputStream(data));
+			decoder.setSubsampling(info.getSubsampling(SIZES[BIG]));
+			return scalePng(decoder, key, etag, lastModified);
+		}
+		return getRejectImages();
+	}
+
+	/**
+	 * Returns the number of bytes a decoded image may use; some memory
+	 * is left for scaling it.
+	 * @return the number of bytes a decoded image may use
+	 */
+	private static long getDecodeBudget() {
+		return Runtime.getRuntime().freeMemory()/DECODE_HEADROOM;
+	}
+
+	private static byte[] readFully(final InputStream stream) throws IOException {
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			for (int n = stream.read(buffer); n >= 0; n = stream.read(buffer)) {
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		} finally {
+			stream.close();
+		}
+	}
+
+	private InputStream getImageInputStream(final String source) throws IOException {
+		final InputStream result;
+		if (source.charAt(0) == '/') {
+			result = getClass().getResourceAsStream(source);
+		} else {
+			// unknown, let the connector try it...
+			result = Connector.openInputStream(source);
+		}
+		if (result == null) {
+			throw new IOException("not found: "+source);
+		}
+		return result;
 	}
 
 	/**
@@ -213,20 +472,25 @@ public class TileButtons extends AbstractButtonGroup implements Constants {
 	protected Image getImage(final int idx) {
 		Image result = images[idx];
 		if (result == null && sources[idx] != null) {
-			new Thread(new ImageGetter(canvas, this, idx)).start();
 			images[idx] = wait;
+			loader.request(idx);
 			result = wait;
 		}
 		return result;
 	}
 
+	/**
+	 * Loads the image at the given index if it or another index with
+	 * the same source is waiting for it.
+	 * @param idx the index of the image
+	 * @return the thumbnail, or <code>null</code> if there is no source at the index.
+	 */
 	protected Image loadImage(final int idx) {
-		final Image img = getBigImage(idx);
 		final Image result;
-		if (img != null) {
-			if (images[idx] == wait || images[idx] == null) {
-				result = scaleImage(img, 64, 64);
-				images[idx] = result;
+		final String key = keys[idx];
+		if (key != null) {
+			if (isWaiting(key)) {
+				result = load(idx)[THUMBNAIL];
 			} else {
 				result = images[idx];
 			}
@@ -237,70 +501,191 @@ public class TileButtons extends AbstractButtonGroup implements Constants {
 	}		
 
 	/**
-	 * Bresenham image scaling.
+	 * Checks whether an index with the given source waits for its image.
+	 * @param key the normalized image source, must not be <code>null</code>.
+	 * @return <code>true</code> if an index with the source waits for its image.
+	 */
+	private boolean isWaiting(final String key) {
+		for (int i = sources.length-1; i >= 0; i--) {
+			if (key.equals(keys[i]) && (images[i] == wait || images[i] == null)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether the given big image is one shown instead of the
+	 * real image, i.e. the one shown while an image is not available or
+	 * the one shown for an image too big to be decoded.
+	 * @param img the big image, may be <code>null</code>.
+	 * @return <code>true</code> if the image is a stand-in for the real image.
+	 */
+	public boolean isPlaceholder(final Image img) {
+		final Image[] waiting = waitImages;
+		return (waiting != null && waiting[BIG] == img) || isRejectImage(img);
+	}
+
+	/**
+	 * Checks whether the given big image is the one shown for a source
+	 * which is too big to be decoded.
+	 * @param img the big image, may be <code>null</code>.
+	 * @return <code>true</code> if the image is a stand-in for the real image.
+	 */
+	private boolean isRejectImage(final Image img) {
+		final Image[] rejected = rejectImages;
+		return rejected != null && rejected[BIG] == img;
+	}
+
+	private Image[] getWaitImages() {
+		synchronized (scalers) {
+			if (waitImages == null) {
+				waitImages = scaleImage(wait, null, null, null);
+			}
+			return waitImages;
+		}
+	}
+
+	/**
+	 * Returns the images shown for a source which is too big to be
+	 * decoded: a dark red square crossed out in white.
+	 * @return the big image and the thumbnail
+	 */
+	private Image[] getRejectImages() {
+		synchronized (scalers) {
+			if (rejectImages == null) {
+				final int size = SIZES[BIG];
+				final Image img = Image.createImage(size, size);
+				final Graphics g = img.getGraphics();
+				g.setColor(DARK_RED);
+				g.fillRect(0, 0, size, size);
+				g.setColor(WHITE);
+				for (int i = -2; i <= 2; i++) {
+					g.drawLine(i, 0, size-1+i, size-1);
+					g.drawLine(size-1+i, 0, i, size-1);
+				}
+				rejectImages = scaleImage(img, null, null, null);
+			}
+			return rejectImages;
+		}
+	}
+
+	/**
+	 * Creates the images from the cached big image of the given source.
+	 * @param source the image source, must not be <code>null</code>.
+	 * @return the big image and the thumbnail, or <code>null</code> if the
+	 * big image is not cached.
+	 */
+	private Image[] loadCached(final String source) {
+		Image[] result = null;
+		if (cache.contains(source)) {
+			final int size = SIZES[BIG];
+			final int[] rgb = new int[size*size];
+			if (cache.get(source, rgb)) {
+				result = new Image[SIZES.length];
+				result[BIG] = Image.createRGBImage(rgb, size, size, false);
+				synchronized (scalers) {
+					startScalers(BIG+1, size, size);
+					scalers[BIG+1].addRows(rgb, 0, size, size);
+					createImages(result, BIG+1);
+					thumbnails.put(source, scalers[THUMBNAIL].getResult(), SIZES[THUMBNAIL]);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Area averaging image scaling to the sizes of {@link #SIZES}. Each size is scaled from the rows of the previous
+	 * size as they are completed, so the source is read only once.
+	 * The source pixels are read in horizontal bands of about {@link #BAND_PIXELS}
+	 * pixels, so the pixels of a big source image are never held in one array.
+	 * The scalers and the band buffer are shared by all calls, so images
+	 * are scaled one at a time.
 	 * @param source the source image, must not be <code>null</code>.
-	 * @param width the new image width
-	 * @param height the new image height
-	 * @return the scaled image
+	 * @param key the key to store the big image under in the image cache;
+	 * <code>null</code> if it is not to be cached
+	 * @param etag the entity tag of the source, may be <code>null</code>.
+	 * @param lastModified the last modification date of the source, may be <code>null</code>.
+	 * @return the scaled images
 	 */
-	private static Image scaleImage(final Image source, final int width, final int height) {
+	private Image[] scaleImage(final Image source, final String key, final String etag, final String lastModified) {
 		final int sheight = source.getHeight();
 		final int swidth = source.getWidth();
-		final Image result;
-		if (sheight != height || swidth != width) {
-			final int[] rawInput = new int[sheight*swidth];
-			source.getRGB(rawInput, 0, swidth, 0, 0, swidth, sheight);
-
-			final int[] rawOutput = new int[width*height];
-
-			final int yd = (sheight / height) * swidth - swidth;
-			final int yr = sheight % height;
-			final int xd = swidth / width;
-			final int xr = swidth % width;
-			int outOffset = 0;
-			int inOffset = 0;
-
-			for (int y = height, ye = 0; y > 0; y--) {
-				for (int x = width, xe = 0; x > 0; x--) {
-					rawOutput[outOffset++] = rawInput[inOffset];
-					inOffset += xd;
-					xe += xr;
-					if (xe >= width) {
-						xe -= width;
-						inOffset++;
-					}
-				}
-				inOffset += yd;
-				ye += yr;
-				if (ye >= height) {
-					ye -= height;
-					inOffset += swidth;
-				}
+		final Image[] result = new Image[SIZES.length];
+		synchronized (scalers) {
+			startScalers(0, swidth, sheight);
+			if (pixels.length < swidth) {
+				pixels = new int[swidth];
 			}
-			result = Image.createRGBImage(rawOutput, width, height, false);			
-		} else {
-			result = source;
+			final int band = pixels.length/swidth;
+			for (int y = 0; y < sheight; y += band) {
+				final int rows = y+band<sheight?band:sheight-y;
+				source.getRGB(pixels, 0, swidth, 0, y, swidth, rows);
+				scalers[0].addRows(pixels, 0, swidth, rows);
+			}
+			createImages(result, 0);
+			store(key, etag, lastModified);
 		}
 		return result;
 	}
 
-	private static class ImageGetter implements Runnable {
-		
-		private final MenuCanvas canvas;
-		private final TileButtons buttons;
-		private final int idx;
-		
-		public ImageGetter(final MenuCanvas aCanvas, final TileButtons aButtons, final int index) {
-			canvas = aCanvas;
-			buttons = aButtons;
-			idx = index;
+	/**
+	 * Decodes a PNG image straight into the scalers, so that the decoded
+	 * image is never held in memory.
+	 * @param decoder the decoder, must not be <code>null</code>.
+	 * @param key the key to store the big image under in the image cache,
+	 * must not be <code>null</code>.
+	 * @param etag the entity tag of the source, may be <code>null</code>.
+	 * @param lastModified the last modification date of the source, may be <code>null</code>.
+	 * @return the scaled images
+	 * @throws IOException in case of invalid image data
+	 */
+	private Image[] scalePng(final PngDecoder decoder, final String key, final String etag, final String lastModified) throws IOException {
+		final Image[] result = new Image[SIZES.length];
+		synchronized (scalers) {
+			startScalers(0, decoder.getWidth(), decoder.getHeight());
+			decoder.decode(scalers[0]);
+			createImages(result, 0);
+			store(key, etag, lastModified);
 		}
+		return result;
+	}
 
-		public void run() {
-			buttons.loadImage(idx);
-			canvas.tilesChanged();
+	/**
+	 * Stores the big image and the thumbnail last scaled.
+	 * @param key the key to store the images under; <code>null</code> if
+	 * they are not to be stored
+	 * @param etag the entity tag of the source, may be <code>null</code>.
+	 * @param lastModified the last modification date of the source, may be <code>null</code>.
+	 */
+	private void store(final String key, final String etag, final String lastModified) {
+		if (key != null) {
+			cache.put(key, scalers[BIG].getResult(), SIZES[BIG]*SIZES[BIG], etag, lastModified);
+			thumbnails.put(key, scalers[THUMBNAIL].getResult(), SIZES[THUMBNAIL]);
+		}
+	}
+
+	/**
+	 * Starts the chain of scalers from the given level on.
+	 * @param from the first level
+	 * @param swidth the source width
+	 * @param sheight the source height
+	 */
+	private void startScalers(final int from, final int swidth, final int sheight) {
+		for (int i = from, w = swidth, h = sheight; i < scalers.length; i++) {
+			scalers[i].start(w, h, SIZES[i], SIZES[i]);
+			scalers[i].setNext(i+1<scalers.length?scalers[i+1]:null);
+			w = h = SIZES[i];
+		}
+	}
+
+	private void createImages(final Image[] result, final int from) {
+		for (int i = from; i < result.length; i++) {
+			// createRGBImage copies the pixels, so the result buffers can be reused
+			result[i] = Image.createRGBImage(scalers[i].getResult(), SIZES[i], SIZES[i], false);
 		}
-		
 	}
+
 
 }
@@ -0,0 +1,243 @@
+package de.engehausen.mobile.puzzling.core;
+
+import java.util.Random;
+
+/**
+ * The board of an n-puzzle, held as a packed primitive state: each
+ * cell contains the index of the tile it shows, the index being the
+ * position (row by row) at which the tile belongs. The hole is the
+ * tile with the index <code>split*split-1</code>.
+ * <p>The number of misplaced tiles and the Manhattan distance to the
+ * solution are tracked with every move, so checking whether the
+ * board is solved takes constant time.</p>
+ */
+public class Board {
+
+	private static final Random RANDOM = new Random(System.currentTimeMillis());
+
+	private final byte[] board;
+	private final int split;
+	private final int hole;
+	private int holex, holey;
+	private int misplaced;
+	private int distance;
+
+	/**
+	 * Creates a solved board.
+	 * @param aSplit the split level (3, 4 or 5)
+	 */
+	public Board(final int aSplit) {
+		split = aSplit;
+		hole = split*split-1;
+		board = new byte[split*split];
+		for (int i = hole; i >= 0; i--) {
+			board[i] = (byte) i;
+		}
+		holex = holey = split-1;
+	}
+
+	/**
+	 * Creates a copy of the given board.
+	 * @param other the board to copy, must not be <code>null</code>.
+	 */
+	public Board(final Board other) {
+		split = other.split;
+		hole = other.hole;
+		board = new byte[other.board.length];
+		System.arraycopy(other.board, 0, board, 0, board.length);
+		holex = other.holex;
+		holey = other.holey;
+		misplaced = other.misplaced;
+		distance = other.distance;
+	}
+
+	/**
+	 * The number of tiles per row/column.
+	 * @return the number of tiles per row/column.
+	 */
+	public int getSplit() {
+		return split;
+	}
+
+	/**
+	 * Returns the index of the tile at the given position.
+	 * @param x the x position
+	 * @param y the y position
+	 * @return the tile index; <code>split*split-1</code> for the hole.
+	 */
+	public int getTile(final int x, final int y) {
+		return board[y*split+x];
+	}
+
+	/**
+	 * Returns the x position of the hole.
+	 * @return the x position of the hole.
+	 */
+	public int getHoleX() {
+		return holex;
+	}
+
+	/**
+	 * Returns the y position of the hole.
+	 * @return the y position of the hole.
+	 */
+	public int getHoleY() {
+		return holey;
+	}
+
+	/**
+	 * Returns a copy of the board state. Each element holds the
+	 * index of the tile at that position (row by row); the hole
+	 * is represented by the index <code>split*split-1</code>.
+	 * @return a copy of the board state, never <code>null</code>.
+	 */
+	public byte[] getState() {
+		final byte[] result = new byte[board.length];
+		System.arraycopy(board, 0, result, 0, board.length);
+		return result;
+	}
+
+	/**
+	 * Reshuffles the tiles. Every solvable arrangement (with the
+	 * hole at the right, bottom) is equally likely: the tiles are
+	 * shuffled with a Fisher-Yates shuffle, and as only even
+	 * permutations can be solved, the first two tiles are swapped
+	 * should the permutation be odd.
+	 */
+	public void shuffle() {
+		shuffle(RANDOM);
+	}
+
+	/**
+	 * Reshuffles the tiles using the given source of randomness.
+	 * @param random the source of randomness, must not be <code>null</code>.
+	 * @see #shuffle()
+	 */
+	public void shuffle(final Random random) {
+		for (int i = board.length-1; i >= 0; i--) {
+			board[i] = (byte) i;
+		}
+		do {
+			boolean odd = false;
+			for (int i = hole-1; i > 0; i--) {
+				final int j = random.nextInt(i+1);
+				if (j != i) {
+					final byte tmp = board[i];
+					board[i] = board[j];
+					board[j] = tmp;
+					odd = !odd;
+				}
+			}
+			if (odd) {
+				final byte tmp = board[0];
+				board[0] = board[1];
+				board[1] = tmp;
+			}
+		} while (count());
+		holex = holey = split-1;
+	}
+
+	/**
+	 * Sets the board to the given state.
+	 * @param state the board state (see {@link #getState()}), must not
+	 * be <code>null</code>; the array is copied.
+	 */
+	public void setState(final byte[] state) {
+		for (int i = board.length-1; i >= 0; i--) {
+			board[i] = state[i];
+			if (state[i] == hole) {
+				holex = i%split;
+				holey = i/split;
+			}
+		}
+		count();
+	}
+
+	/**
+	 * Moves the hole from its current position to the given
+	 * new position. The number of misplaced tiles and the
+	 * distance to the solution are updated with the (constant
+	 * time) change caused by moving the tile.
+	 * @param sx the new x position of the hole
+	 * @param sy the new y position of the hole
+	 */
+	public void moveHole(final int sx, final int sy) {
+		final int from = sy*split+sx;
+		final int to = holey*split+holex;
+		final int tile = board[from];
+		if (tile == from) {
+			misplaced++;
+		} else if (tile == to) {
+			misplaced--;
+		}
+		final int tx = tile%split;
+		final int ty = tile/split;
+		distance += abs(holex-tx)+abs(holey-ty)-abs(sx-tx)-abs(sy-ty);
+		board[to] = board[from];
+		board[from] = (byte) hole;
+		holex = sx;
+		holey = sy;
+	}
+
+	/**
+	 * Checks whether the tile at the given position can be moved,
+	 * i.e. whether it is next to the hole.
+	 * @param x the x position of the tile
+	 * @param y the y position of the tile
+	 * @return <code>true</code> if the tile can be moved.
+	 */
+	public boolean isMovable(final int x, final int y) {
+		return abs(x-holex)+abs(y-holey) == 1;
+	}
+
+	/**
+	 * Check if the puzzle is solved.
+	 * @return <code>true</code> if the puzzle has been solved.
+	 */
+	public boolean isSolved() {
+		return misplaced == 0;
+	}
+
+	/**
+	 * Returns the number of tiles not at their solved position
+	 * (the hole is not counted).
+	 * @return the number of misplaced tiles
+	 */
+	public int getMisplaced() {
+		return misplaced;
+	}
+
+	/**
+	 * Returns the distance to the solution, which is the sum of the
+	 * Manhattan distances of all tiles to their solved position
+	 * (the hole is not counted). This is a lower bound for the number
+	 * of moves needed to solve the puzzle.
+	 * @return the distance to the solution
+	 */
+	public int getDistance() {
+		return distance;
+	}
+
+	/**
+	 * Computes the number of misplaced tiles and the distance
+	 * to the solution from scratch.
+	 * @return <code>true</code> if the puzzle is solved.
+	 */
+	private boolean count() {
+		misplaced = 0;
+		distance = 0;
+		for (int i = board.length-1; i >= 0; i--) {
+			final int tile = board[i];
+			if (tile != i && tile != hole) {
+				misplaced++;
+				distance += abs(i%split-tile%split)+abs(i/split-tile/split);
+			}
+		}
+		return misplaced == 0;
+	}
+
+	private static int abs(final int value) {
+		return value<0?-value:value;
+	}
+
+}
@@ -0,0 +1,256 @@
+package de.engehausen.mobile.puzzling.core;
+
+/**
+ * Knows the next best move for the board of a game. A plan (a
+ * solution computed by a {@link Solver}) is computed in a background
+ * thread while the player thinks. As long as the player follows the
+ * plan it is simply advanced. When the player deviates, the plan is
+ * patched right away by prepending the move undoing the deviation,
+ * and a new plan is searched for in the background.
+ * <p>The searches have a small node budget of their own (see
+ * {@link #MAX_NODES}). After a search gave up, the next one is only
+ * started once the player brought the Manhattan distance of the board
+ * below the distance the search gave up at. No hints are given for
+ * boards larger than {@link #MAX_SPLIT}, where searches within the
+ * budget rarely succeed.</p>
+ * <p>All methods called by the user interface only hold the monitor
+ * of the engine briefly; the search itself runs without it.</p>
+ */
+public class HintEngine implements Runnable {
+
+	/**
+	 * The maximum number of nodes a search for a plan may expand.
+	 */
+	public static final long MAX_NODES = 250000L;
+
+	/**
+	 * The largest split level hints are given for.
+	 */
+	public static final int MAX_SPLIT = 4;
+
+	private static final int MAX_PLAN = 255;
+
+	private byte[] board;
+	private int split;
+	private int hole;
+	private int distance;
+	private int givenUp;
+	private byte[] plan;
+	private int step;
+	private byte[] history;
+	private int historyCount;
+	private int historyStart;
+	private Solver solver;
+	private boolean dirty;
+	private boolean running;
+
+	/**
+	 * Creates the engine; it does nothing until it is run and
+	 * given a board with {@link #reset(byte[], int)}.
+	 */
+	public HintEngine() {
+		history = new byte[MAX_PLAN];
+		running = true;
+	}
+
+	/**
+	 * Sets a new board to give hints for. Boards larger than
+	 * {@link #MAX_SPLIT} get no hints.
+	 * @param state the board state as returned by {@link Board#getState()},
+	 * must not be <code>null</code>.
+	 * @param aSplit the split level (3, 4 or 5)
+	 */
+	public synchronized void reset(final byte[] state, final int aSplit) {
+		plan = null;
+		givenUp = Integer.MAX_VALUE;
+		if (aSplit > MAX_SPLIT) {
+			board = null;
+			if (solver != null) {
+				solver.cancel();
+				solver = null;
+			}
+			dirty = false;
+			return;
+		}
+		board = state;
+		split = aSplit;
+		distance = 0;
+		for (int i = state.length-1; i >= 0; i--) {
+			if (state[i] == state.length-1) {
+				hole = i;
+			} else {
+				distance += distance(state[i], i);
+			}
+		}
+		replan();
+	}
+
+	/**
+	 * Informs the engine about a move of the player.
+	 * @param position the new position (row by row index) of the hole
+	 */
+	public synchronized void moved(final int position) {
+		if (board == null) {
+			return;
+		}
+		final int previous = hole;
+		final int tile = board[position];
+		board[previous] = (byte) tile;
+		board[position] = (byte) (board.length-1);
+		hole = position;
+		distance += distance(tile, previous)-distance(tile, position);
+		if (solver != null) {
+			if (historyCount < history.length) {
+				history[historyCount++] = (byte) position;
+			} else {
+				// too far off to make use of the running search
+				replan();
+			}
+		}
+		if (plan != null) {
+			if (step < plan.length && plan[step] == position) {
+				step++;
+			} else {
+				plan = undo(previous, plan, step);
+				step = 0;
+				replan();
+			}
+		} else if (solver == null && distance < givenUp) {
+			// the last search gave up; the board is closer to solved now
+			replan();
+		}
+	}
+
+	/**
+	 * Returns the position of the tile to move next.
+	 * @return the position (row by row index) of the tile to move next,
+	 * or <code>-1</code> if not known (yet).
+	 */
+	public synchronized int getHint() {
+		return (plan != null && step < plan.length)?plan[step]:-1;
+	}
+
+	/**
+	 * Stops the engine. It cannot be run again.
+	 */
+	public synchronized void stop() {
+		running = false;
+		board = null;
+		plan = null;
+		if (solver != null) {
+			solver.cancel();
+		}
+		notify();
+	}
+
+	/**
+	 * Computes plans whenever needed, until stopped.
+	 */
+	public void run() {
+		while (true) {
+			final Solver current;
+			final int startDistance;
+			synchronized (this) {
+				while (running && !dirty) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// ignore
+					}
+				}
+				if (!running) {
+					return;
+				}
+				dirty = false;
+				historyCount = 0;
+				historyStart = hole;
+				startDistance = distance;
+				current = new Solver(board, split, null);
+				current.setMaxNodes(MAX_NODES);
+				solver = current;
+			}
+			final byte[] result = current.solve();
+			synchronized (this) {
+				if (solver == current) {
+					solver = null;
+					if (result != null) {
+						givenUp = Integer.MAX_VALUE;
+						accept(result);
+					} else {
+						givenUp = startDistance;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes over a plan computed for the board as it was when the search
+	 * started, taking into account the moves made in the meantime.
+	 * @param result the computed plan, must not be <code>null</code>.
+	 */
+	private void accept(final byte[] result) {
+		int i = 0;
+		while (i < historyCount && i < result.length && history[i] == result[i]) {
+			i++;
+		}
+		if (i == historyCount) {
+			plan = result;
+			step = i;
+		} else if (historyCount+result.length <= MAX_PLAN) {
+			// undo the moves made since the search started, most recent first
+			final byte[] patched = new byte[historyCount+result.length];
+			for (int j = 0; j < historyCount; j++) {
+				final int k = historyCount-2-j;
+				patched[j] = k>=0?history[k]:(byte) historyStart;
+			}
+			System.arraycopy(result, 0, patched, historyCount, result.length);
+			plan = patched;
+			step = 0;
+			replan();
+		}
+	}
+
+	/**
+	 * Prepends the move to the given position to the remainder of a plan.
+	 * @param position the position the hole is to move to first
+	 * @param current the plan, must not be <code>null</code>.
+	 * @param from the first move of the plan to keep
+	 * @return the new plan, or <code>null</code> if it would become too long
+	 */
+	private static byte[] undo(final int position, final byte[] current, final int from) {
+		final int length = current.length-from;
+		if (length >= MAX_PLAN) {
+			return null;
+		}
+		final byte[] result = new byte[length+1];
+		result[0] = (byte) position;
+		System.arraycopy(current, from, result, 1, length);
+		return result;
+	}
+
+	/**
+	 * Returns the Manhattan distance of a tile to its solved position.
+	 * @param tile the tile
+	 * @param position the position (row by row index) of the tile
+	 * @return the Manhattan distance
+	 */
+	private int distance(final int tile, final int position) {
+		final int dx = tile%split-position%split;
+		final int dy = tile/split-position/split;
+		return (dx<0?-dx:dx)+(dy<0?-dy:dy);
+	}
+
+	/**
+	 * Marks the plan as to be computed anew; a running search is cancelled.
+	 */
+	private void replan() {
+		if (solver != null) {
+			solver.cancel();
+			solver = null;
+		}
+		dirty = true;
+		notify();
+	}
+
+}
@@ -0,0 +1,184 @@
+package de.engehausen.mobile.puzzling.core;
+
+/**
+ * The type and dimensions of an encoded image, read from the header
+ * of its PNG or JPEG data without decoding it. This allows to estimate
+ * the memory needed for decoding and to choose how to decode the image
+ * (see {@link #getStrategy(long)}).
+ */
+public class ImageInfo {
+
+	/** Type of PNG images. */
+	public static final int PNG = 1;
+	/** Type of JPEG images. */
+	public static final int JPEG = 2;
+
+	/** Strategy: decode the whole image. */
+	public static final int DIRECT = 0;
+	/** Strategy: decode the (PNG) image row by row with subsampling, see {@link #getSubsampling(int)}. */
+	public static final int SUBSAMPLE = 1;
+	/** Strategy: do not decode the (JPEG) image. */
+	public static final int REJECT = 2;
+
+	/** The largest subsampling factor used. */
+	public static final int MAX_SUBSAMPLING = 8;
+
+	/** The bytes per pixel of a decoded image. */
+	private static final int BYTES_PER_PIXEL = 4;
+
+	private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a };
+
+	private final int type;
+	private final int width;
+	private final int height;
+
+	/**
+	 * Reads the image information from the header of the given data.
+	 * @param data the encoded image, must not be <code>null</code>.
+	 * @param offset the offset of the image in the data
+	 * @param length the length of the image
+	 * @return the image information, or <code>null</code> if the data is
+	 * neither PNG nor JPEG (or the header is incomplete).
+	 */
+	public static ImageInfo read(final byte[] data, final int offset, final int length) {
+		ImageInfo result = null;
+		if (length >= 24 && startsWith(data, offset, PNG_SIGNATURE)) {
+			// the IHDR chunk must come first: length, type, width, height
+			result = new ImageInfo(PNG, getInt(data, offset+16), getInt(data, offset+20));
+		} else if (length >= 4 && (data[offset]&0xff) == 0xff && (data[offset+1]&0xff) == 0xd8) {
+			result = readJPEG(data, offset, length);
+		}
+		return result != null && result.width > 0 && result.height > 0 ? result : null;
+	}
+
+	/**
+	 * Creates the image information.
+	 * @param aType the type of the image
+	 * @param aWidth the width of the image
+	 * @param aHeight the height of the image
+	 */
+	public ImageInfo(final int aType, final int aWidth, final int aHeight) {
+		type = aType;
+		width = aWidth;
+		height = aHeight;
+	}
+
+	/**
+	 * Returns the type of the image.
+	 * @return {@link #PNG} or {@link #JPEG}
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the width of the image.
+	 * @return the width of the image
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the image.
+	 * @return the height of the image
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the estimated number of bytes needed for the decoded image.
+	 * @param subsampling the subsampling factor (1 for none)
+	 * @return the estimated number of bytes
+	 */
+	public long getCost(final int subsampling) {
+		return BYTES_PER_PIXEL*(long) ((width+subsampling-1)/subsampling)*(long) ((height+subsampling-1)/subsampling);
+	}
+
+	/**
+	 * Returns the largest subsampling factor (a power of two, at most
+	 * {@link #MAX_SUBSAMPLING}) for which both sides of the subsampled
+	 * image are at least the given size. The memory needed to decode a
+	 * PNG image row by row does not depend on its size, so the factor
+	 * only saves work, without losing detail needed for the given size.
+	 * @param size the minimum width and height of the subsampled image
+	 * @return the subsampling factor (1 for none)
+	 */
+	public int getSubsampling(final int size) {
+		int s = MAX_SUBSAMPLING;
+		while (s > 1 && (width/s < size || height/s < size)) {
+			s >>= 1;
+		}
+		return s;
+	}
+
+	/**
+	 * Returns how to decode the image within the given number of bytes.
+	 * Images which fit are decoded directly. PNG images which do not fit
+	 * are decoded row by row, which needs little memory whatever their
+	 * size; JPEG images can only be decoded by the platform as a whole,
+	 * so those which do not fit are rejected.
+	 * @param budget the number of bytes available for the decoded image
+	 * @return {@link #DIRECT} or {@link #SUBSAMPLE} for PNG images,
+	 * {@link #DIRECT} or {@link #REJECT} for JPEG images
+	 */
+	public int getStrategy(final long budget) {
+		if (getCost(1) <= budget) {
+			return DIRECT;
+		}
+		return type == PNG ? SUBSAMPLE : REJECT;
+	}
+
+	/**
+	 * Reads the dimensions from the start-of-frame segment of a JPEG image.
+	 * @param data the encoded image, must not be <code>null</code>.
+	 * @param offset the offset of the image in the data
+	 * @param length the length of the image
+	 * @return the image information, or <code>null</code> if no frame header was found.
+	 */
+	private static ImageInfo readJPEG(final byte[] data, final int offset, final int length) {
+		final int end = offset+length;
+		int pos = offset+2;
+		while (pos+9 <= end) {
+			if ((data[pos]&0xff) != 0xff) {
+				return null;
+			}
+			final int marker = data[pos+1]&0xff;
+			if (marker == 0xff) {
+				// fill byte
+				pos++;
+			} else if (marker == 0xd8 || marker == 0x01 || (marker >= 0xd0 && marker <= 0xd7)) {
+				// segments without length
+				pos += 2;
+			} else if (marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc) {
+				// start of frame: length, precision, height, width
+				return new ImageInfo(JPEG, getShort(data, pos+7), getShort(data, pos+5));
+			} else if (marker == 0xd9 || marker == 0xda) {
+				// end of image or start of scan before a frame header
+				return null;
+			} else {
+				pos += 2+getShort(data, pos+2);
+			}
+		}
+		return null;
+	}
+
+	private static boolean startsWith(final byte[] data, final int offset, final byte[] prefix) {
+		for (int i = prefix.length-1; i >= 0; i--) {
+			if (data[offset+i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int getInt(final byte[] data, final int pos) {
+		return ((data[pos]&0xff)<<24)|((data[pos+1]&0xff)<<16)|((data[pos+2]&0xff)<<8)|(data[pos+3]&0xff);
+	}
+
+	private static int getShort(final byte[] data, final int pos) {
+		return ((data[pos]&0xff)<<8)|(data[pos+1]&0xff);
+	}
+
+}
@@ -0,0 +1,192 @@
+package de.engehausen.mobile.puzzling.core;
+
+import java.util.Vector;
+
+/**
+ * Keys identifying images independently of how their source is written:
+ * a normalized form of the source URL and a key derived from the content
+ * of the encoded image. Sources with equal keys can share one decoded image.
+ * Relative URLs (e.g. of redirects) can be resolved against the URL of the
+ * source, see {@link #resolve(String, String)}.
+ */
+public final class ImageKeys {
+
+	private static final String SCHEME_SEPARATOR = "://";
+	private static final String HTTP = "http";
+	private static final String DEFAULT_HTTP_PORT = ":80";
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private ImageKeys() {
+		// only static methods
+	}
+
+	/**
+	 * Normalizes the given URL: the scheme and the host are converted to
+	 * lower case, the default HTTP port, a fragment and an empty path are
+	 * removed. Sources which are not URLs (e.g. resource paths) are
+	 * returned unchanged.
+	 * @param url the URL, must not be <code>null</code>.
+	 * @return the normalized URL, never <code>null</code>.
+	 */
+	public static String normalize(final String url) {
+		final int scheme = url.indexOf(SCHEME_SEPARATOR);
+		if (scheme <= 0) {
+			return url;
+		}
+		final int authorityStart = scheme+SCHEME_SEPARATOR.length();
+		int fragment = url.indexOf('#', authorityStart);
+		if (fragment < 0) {
+			fragment = url.length();
+		}
+		int authorityEnd = authorityStart;
+		while (authorityEnd < fragment && "/?".indexOf(url.charAt(authorityEnd)) < 0) {
+			authorityEnd++;
+		}
+		final String schemeName = url.substring(0, scheme).toLowerCase();
+		String authority = url.substring(authorityStart, authorityEnd);
+		// user information is kept as it is, only the host is converted
+		final int at = authority.lastIndexOf('@')+1;
+		authority = authority.substring(0, at)+authority.substring(at).toLowerCase();
+		if (HTTP.equals(schemeName) && authority.endsWith(DEFAULT_HTTP_PORT)) {
+			authority = authority.substring(0, authority.length()-DEFAULT_HTTP_PORT.length());
+		}
+		final StringBuffer result = new StringBuffer(fragment+1);
+		result.append(schemeName).append(SCHEME_SEPARATOR).append(authority);
+		if (authorityEnd == fragment || url.charAt(authorityEnd) == '?') {
+			result.append('/');
+		}
+		result.append(url.substring(authorityEnd, fragment));
+		return result.toString();
+	}
+
+	/**
+	 * Resolves a possibly relative URL against the given absolute URL
+	 * (RFC 3986, section 5.2): a URL with a scheme is returned unchanged,
+	 * a network path (<code>//host/path</code>) gets the scheme, an absolute
+	 * path the scheme and authority and a relative path (or query or fragment)
+	 * the directory (or path) of the given URL. Dot segments are removed from
+	 * the resulting path.
+	 * @param base the absolute URL, must not be <code>null</code>.
+	 * @param url the URL to resolve, must not be <code>null</code>.
+	 * @return the resolved URL, never <code>null</code>.
+	 */
+	public static String resolve(final String base, final String url) {
+		final int scheme = base.indexOf(SCHEME_SEPARATOR);
+		if (scheme <= 0 || hasScheme(url)) {
+			return url;
+		}
+		if (url.startsWith("//")) {
+			return base.substring(0, scheme+1)+url;
+		}
+		int pathStart = scheme+SCHEME_SEPARATOR.length();
+		while (pathStart < base.length() && "/?#".indexOf(base.charAt(pathStart)) < 0) {
+			pathStart++;
+		}
+		final String authority = base.substring(0, pathStart);
+		if (url.startsWith("/")) {
+			return authority+removeDotSegments(url);
+		}
+		int fragment = base.indexOf('#', pathStart);
+		if (fragment < 0) {
+			fragment = base.length();
+		}
+		if (url.length() == 0 || url.startsWith("#")) {
+			return base.substring(0, fragment)+url;
+		}
+		int pathEnd = pathStart;
+		while (pathEnd < fragment && base.charAt(pathEnd) != '?') {
+			pathEnd++;
+		}
+		if (url.startsWith("?")) {
+			return base.substring(0, pathEnd)+url;
+		}
+		final String path = base.substring(pathStart, pathEnd);
+		final int slash = path.lastIndexOf('/');
+		return authority+removeDotSegments((slash < 0 ? "/" : path.substring(0, slash+1))+url);
+	}
+
+	/**
+	 * Returns the key of the given content: its length and its 64 bit
+	 * FNV-1a hash.
+	 * @param data the content, must not be <code>null</code>.
+	 * @param offset the offset of the content in the array
+	 * @param length the length of the content
+	 * @return the key of the content, never <code>null</code>.
+	 */
+	public static String hash(final byte[] data, final int offset, final int length) {
+		long hash = FNV_OFFSET;
+		for (int i = offset, end = offset+length; i < end; i++) {
+			hash ^= data[i]&0xff;
+			hash *= FNV_PRIME;
+		}
+		final StringBuffer result = new StringBuffer(28);
+		result.append('#').append(length).append('-');
+		for (int shift = 60; shift >= 0; shift -= 4) {
+			result.append(HEX[(int) (hash>>>shift)&0xf]);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Checks whether the given URL starts with a scheme (letters, digits,
+	 * <code>+</code>, <code>-</code> or <code>.</code> followed by a colon).
+	 * @param url the URL, must not be <code>null</code>.
+	 * @return <code>true</code> if the URL starts with a scheme.
+	 */
+	private static boolean hasScheme(final String url) {
+		for (int i = 0; i < url.length(); i++) {
+			final char c = url.charAt(i);
+			if (c == ':') {
+				return i > 0;
+			}
+			if (!Character.isDigit(c) && (c < 'a' || c > 'z') && (c < 'A' || c > 'Z') && "+-.".indexOf(c) < 0) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes the <code>.</code> and <code>..</code> segments from the
+	 * given absolute path; a query or fragment is kept as it is.
+	 * @param path the path, starting with a slash, must not be <code>null</code>.
+	 * @return the path without dot segments
+	 */
+	private static String removeDotSegments(final String path) {
+		int end = 0;
+		while (end < path.length() && "?#".indexOf(path.charAt(end)) < 0) {
+			end++;
+		}
+		final Vector segments = new Vector();
+		for (int start = 1; start <= end; ) {
+			int slash = path.indexOf('/', start);
+			if (slash < 0 || slash > end) {
+				slash = end;
+			}
+			final String segment = path.substring(start, slash);
+			if ("..".equals(segment)) {
+				if (!segments.isEmpty()) {
+					segments.removeElementAt(segments.size()-1);
+				}
+				if (slash == end) {
+					segments.addElement("");
+				}
+			} else if (".".equals(segment)) {
+				if (slash == end) {
+					segments.addElement("");
+				}
+			} else {
+				segments.addElement(segment);
+			}
+			start = slash+1;
+		}
+		final StringBuffer result = new StringBuffer(path.length());
+		for (int i = 0; i < segments.size(); i++) {
+			result.append('/').append(segments.elementAt(i));
+		}
+		return result.append(path.substring(end)).toString();
+	}
+
+}
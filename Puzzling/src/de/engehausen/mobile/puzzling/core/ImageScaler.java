@@ -0,0 +1,276 @@
+package de.engehausen.mobile.puzzling.core;
+
+/**
+ * Scales images given as ARGB pixel arrays by area averaging:
+ * each target pixel is the average of the source area it covers,
+ * weighted by how much of each source pixel falls into that area.
+ * Only integer arithmetic is used.
+ * <p>The source pixels are fed row by row (see {@link #addRows(int[], int, int, int)}),
+ * so the whole source does not need to be held in memory. The
+ * scaler keeps its buffers for the next image of the same (or smaller)
+ * dimensions; an instance must not be used by several threads at
+ * the same time.</p>
+ * <p>Scalers can be chained (see {@link #setNext(ImageScaler)}) to produce
+ * several sizes of an image, e.g. a big image and its thumbnail, in a single
+ * pass over the source.</p>
+ * <p>The alpha channel is ignored, the result is opaque.</p>
+ */
+public class ImageScaler {
+
+	private static final int OPAQUE = 0xff000000;
+	private static final int MAX_HORIZONTAL_SUM = 0x7fff;
+	private static final int MAX_PACKED_RUN = 256;
+	private static final int FRACTION_BITS = 23;
+	private static final int ROUNDING = 1<<(FRACTION_BITS-1);
+
+	private int swidth, sheight;
+	private int width, height;
+	private int shift;
+	private int reduction;
+	private int reciprocal;
+
+	// horizontally, a target pixel covers a partially covered source pixel
+	// (weight xHead), a run of xCount fully covered source pixels (weight
+	// width each) and another partially covered pixel (weight xTail)
+	private int[] xFirst;
+	private int[] xHead;
+	private int[] xCount;
+	private int[] xTail;
+	private int[] rowSum;   // horizontal sums (r,g,b) of the current source row
+	private int[] areaSum;  // sums (r,g,b) of the current target row
+
+	// vertical state
+	private int sourceRow;
+	private int targetRow;
+	private int rowEnd;     // end of the current source row (in units of height)
+	private int targetEnd;  // end of the current target row (in units of sheight)
+	private int position;   // vertical position (in units)
+
+	private int[] result;
+	private ImageScaler next;
+
+	/**
+	 * Creates the scaler.
+	 */
+	public ImageScaler() {
+		xFirst = new int[0];
+		xHead = xFirst;
+		xCount = xFirst;
+		xTail = xFirst;
+		rowSum = xFirst;
+		areaSum = xFirst;
+		result = xFirst;
+	}
+
+	/**
+	 * Scales the given image.
+	 * @param rawInput the source pixels (row by row), must not be <code>null</code>.
+	 * @param swidth the source width
+	 * @param sheight the source height
+	 * @param width the new image width
+	 * @param height the new image height
+	 * @return the scaled pixels; the array is reused by the next scaling
+	 * and may be larger than <code>width*height</code>.
+	 */
+	public int[] scale(final int[] rawInput, final int swidth, final int sheight, final int width, final int height) {
+		start(swidth, sheight, width, height);
+		addRows(rawInput, 0, swidth, sheight);
+		return getResult();
+	}
+
+	/**
+	 * Starts scaling an image of the given size. The source pixels must then
+	 * be passed using {@link #addRows(int[], int, int, int)}.
+	 * @param aSourceWidth the source width
+	 * @param aSourceHeight the source height
+	 * @param aWidth the new image width
+	 * @param aHeight the new image height
+	 */
+	public void start(final int aSourceWidth, final int aSourceHeight, final int aWidth, final int aHeight) {
+		swidth = aSourceWidth;
+		sheight = aSourceHeight;
+		width = aWidth;
+		height = aHeight;
+		// a source pixel has the width "width" and a target pixel the width
+		// "swidth", so the weights of a target pixel add up to swidth
+		if (xFirst.length < width) {
+			xFirst = new int[width];
+			xHead = new int[width];
+			xCount = new int[width];
+			xTail = new int[width];
+		}
+		for (int x = 0; x < width; x++) {
+			final int start = x*swidth;
+			final int end = start+swidth;
+			final int first = start/width;
+			final int firstEnd = (first+1)*width;
+			xFirst[x] = first;
+			if (firstEnd >= end) {
+				xHead[x] = swidth;
+				xCount[x] = 0;
+				xTail[x] = 0;
+			} else {
+				xHead[x] = firstEnd-start;
+				xCount[x] = (end-firstEnd)/width;
+				xTail[x] = (end-firstEnd)%width;
+			}
+		}
+		// keep the horizontal sums small enough to be summed up vertically
+		shift = 0;
+		while ((255*swidth)>>shift > MAX_HORIZONTAL_SUM) {
+			shift++;
+		}
+		// a target pixel is the area sum divided by the area; instead of
+		// dividing, the reduced sum is multiplied with the fixed point
+		// reciprocal of the area (at least 15 bits precise)
+		final int area = (swidth*sheight)>>shift;
+		reduction = 0;
+		while ((area>>reduction) > 256) {
+			reduction++;
+		}
+		reciprocal = (int) ((1L<<(FRACTION_BITS+reduction))/area);
+		if (rowSum.length < 3*width) {
+			rowSum = new int[3*width];
+			areaSum = new int[3*width];
+		}
+		for (int i = 3*width-1; i >= 0; i--) {
+			areaSum[i] = 0;
+		}
+		if (result.length < width*height) {
+			result = new int[width*height];
+		}
+		sourceRow = 0;
+		targetRow = 0;
+		position = 0;
+		rowEnd = height;
+		targetEnd = sheight;
+	}
+
+	/**
+	 * Sets the scaler receiving the rows of the result of this scaler as soon
+	 * as they are completed. The next scaler must be started (see
+	 * {@link #start(int, int, int, int)}) with the result size of this
+	 * scaler as its source size before rows are added to this scaler.
+	 * @param aNext the next scaler, may be <code>null</code>.
+	 */
+	public void setNext(final ImageScaler aNext) {
+		next = aNext;
+	}
+
+	/**
+	 * Adds rows of source pixels.
+	 * @param pixels the pixels, must not be <code>null</code>.
+	 * @param offset the offset of the first pixel in the array
+	 * @param scanlength the distance of two rows in the array
+	 * @param rows the number of rows
+	 */
+	public void addRows(final int[] pixels, final int offset, final int scanlength, final int rows) {
+		for (int r = 0; r < rows && sourceRow < sheight; r++) {
+			sumRow(pixels, offset+r*scanlength);
+			while (true) {
+				final int end = rowEnd<targetEnd?rowEnd:targetEnd;
+				final int len = end-position;
+				if (len > 0) {
+					for (int i = 3*width-1; i >= 0; i--) {
+						areaSum[i] += rowSum[i]*len;
+					}
+				}
+				position = end;
+				if (end == targetEnd) {
+					emitRow();
+					targetRow++;
+					targetEnd += sheight;
+				}
+				if (end == rowEnd || targetRow >= height) {
+					break;
+				}
+			}
+			sourceRow++;
+			rowEnd += height;
+		}
+	}
+
+	/**
+	 * Returns the scaled pixels, once all source rows have been added.
+	 * @return the scaled pixels (row by row, <code>width</code> pixels per row);
+	 * the array is reused by the next scaling and may be larger than
+	 * <code>width*height</code>.
+	 */
+	public int[] getResult() {
+		return result;
+	}
+
+	private void sumRow(final int[] pixels, final int offset) {
+		final int[] sum = rowSum;
+		final int[] first = xFirst;
+		final int[] head = xHead;
+		final int[] counts = xCount;
+		final int[] tail = xTail;
+		final int w = width;
+		final int s = shift;
+		for (int x = 0, idx = 0; x < w; x++) {
+			int i = offset+first[x];
+			int p = pixels[i];
+			int l = head[x];
+			int r = ((p>>16)&0xff)*l;
+			int g = ((p>>8)&0xff)*l;
+			int b = (p&0xff)*l;
+			int count = counts[x];
+			if (count > 0) {
+				// sum up red and blue in one integer; this is safe for
+				// runs of up to 256 pixels
+				int ir = 0, ig = 0, ib = 0;
+				do {
+					final int run = count<MAX_PACKED_RUN?count:MAX_PACKED_RUN;
+					int rb = 0, gg = 0;
+					for (int k = run; k > 0; k--) {
+						p = pixels[++i];
+						rb += p&0xff00ff;
+						gg += p&0xff00;
+					}
+					ir += rb>>>16;
+					ig += gg>>>8;
+					ib += rb&0xffff;
+					count -= run;
+				} while (count > 0);
+				r += ir*w;
+				g += ig*w;
+				b += ib*w;
+			}
+			l = tail[x];
+			if (l > 0) {
+				p = pixels[i+1];
+				r += ((p>>16)&0xff)*l;
+				g += ((p>>8)&0xff)*l;
+				b += (p&0xff)*l;
+			}
+			sum[idx++] = r>>s;
+			sum[idx++] = g>>s;
+			sum[idx++] = b>>s;
+		}
+	}
+
+	private void emitRow() {
+		final int[] sum = areaSum;
+		final int red = reduction;
+		final int rec = reciprocal;
+		int out = targetRow*width;
+		for (int i = 0, x = width; x > 0; x--) {
+			final int r = clamp(((sum[i]>>red)*rec+ROUNDING)>>FRACTION_BITS);
+			sum[i++] = 0;
+			final int g = clamp(((sum[i]>>red)*rec+ROUNDING)>>FRACTION_BITS);
+			sum[i++] = 0;
+			final int b = clamp(((sum[i]>>red)*rec+ROUNDING)>>FRACTION_BITS);
+			sum[i++] = 0;
+			result[out++] = OPAQUE|(r<<16)|(g<<8)|b;
+		}
+		if (next != null) {
+			next.addRows(result, targetRow*width, width, 1);
+		}
+	}
+
+	private static int clamp(final int value) {
+		return value>255?255:value;
+	}
+
+}
@@ -0,0 +1,377 @@
+package de.engehausen.mobile.puzzling.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decompresses a zlib stream (RFC 1950 wrapping RFC 1951 "deflate" data),
+ * as CLDC has no decompression. The data is inflated on demand into a
+ * window of 64 kilobytes, so only the last 32 kilobytes needed for back
+ * references and the bytes not yet read are held in memory. The compressed
+ * data is read in blocks, so the inflater may read beyond its end. The Huffman
+ * codes are decoded canonically, bit by bit (as in zlib's <code>puff</code>).
+ * The Adler-32 checksum is not checked.
+ */
+public class Inflater extends InputStream {
+
+	private static final int WINDOW_SIZE = 1<<16;
+	private static final int WINDOW_MASK = WINDOW_SIZE-1;
+	/** Inflating pauses when this many bytes have not been read yet. */
+	private static final int PENDING_LIMIT = 1<<15;
+	private static final int MAX_BITS = 15;
+	private static final int MAX_LENGTH_CODES = 286;
+	private static final int MAX_DISTANCE_CODES = 30;
+	private static final int FIXED_LENGTH_CODES = 288;
+	private static final int INPUT_SIZE = 1024;
+
+	private static final int NO_BLOCK = -1;
+	private static final int STORED = 0;
+	private static final int FIXED = 1;
+	private static final int DYNAMIC = 2;
+
+	private static final short[] LENGTH_BASE = {
+		3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+		35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+	private static final short[] LENGTH_EXTRA = {
+		0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+		3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+	private static final short[] DISTANCE_BASE = {
+		1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+		257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145,
+		8193, 12289, 16385, 24577 };
+	private static final short[] DISTANCE_EXTRA = {
+		0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+		7, 7, 8, 8, 9, 9, 10, 10, 11, 11,
+		12, 12, 13, 13 };
+	/** The order of the code length code lengths. */
+	private static final byte[] ORDER = {
+		16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15 };
+
+	private static final short[] FIXED_LENGTH_COUNT = new short[MAX_BITS+1];
+	private static final short[] FIXED_LENGTH_SYMBOL = new short[FIXED_LENGTH_CODES];
+	private static final short[] FIXED_DISTANCE_COUNT = new short[MAX_BITS+1];
+	private static final short[] FIXED_DISTANCE_SYMBOL = new short[MAX_DISTANCE_CODES];
+
+	static {
+		final byte[] lengths = new byte[FIXED_LENGTH_CODES];
+		for (int i = 0; i < FIXED_LENGTH_CODES; i++) {
+			lengths[i] = (byte) (i < 144 ? 8 : i < 256 ? 9 : i < 280 ? 7 : 8);
+		}
+		construct(FIXED_LENGTH_COUNT, FIXED_LENGTH_SYMBOL, lengths, FIXED_LENGTH_CODES);
+		for (int i = 0; i < MAX_DISTANCE_CODES; i++) {
+			lengths[i] = 5;
+		}
+		construct(FIXED_DISTANCE_COUNT, FIXED_DISTANCE_SYMBOL, lengths, MAX_DISTANCE_CODES);
+	}
+
+	private final InputStream in;
+	private final byte[] window;
+	private final byte[] input;
+	private int inputPos, inputEnd;
+	private final short[] lengthCount;
+	private final short[] lengthSymbol;
+	private final short[] distanceCount;
+	private final short[] distanceSymbol;
+	private int bitBuffer;
+	private int bitCount;
+	/** The total number of bytes inflated and read (modulo 2^32). */
+	private int produced, consumed;
+	private int type;
+	private int stored;
+	private boolean last;
+	private boolean done;
+	private boolean started;
+	private short[] currentLengthCount, currentLengthSymbol;
+	private short[] currentDistanceCount, currentDistanceSymbol;
+
+	/**
+	 * Creates the inflater for the given zlib stream.
+	 * @param anInput the compressed data, must not be <code>null</code>.
+	 */
+	public Inflater(final InputStream anInput) {
+		in = anInput;
+		window = new byte[WINDOW_SIZE];
+		input = new byte[INPUT_SIZE];
+		lengthCount = new short[MAX_BITS+1];
+		lengthSymbol = new short[MAX_LENGTH_CODES];
+		distanceCount = new short[MAX_BITS+1];
+		distanceSymbol = new short[MAX_DISTANCE_CODES];
+		type = NO_BLOCK;
+	}
+
+	// non-javadoc: see superclass
+	public int read() throws IOException {
+		while (produced == consumed) {
+			if (done) {
+				return -1;
+			}
+			inflate();
+		}
+		return window[consumed++ & WINDOW_MASK]&0xff;
+	}
+
+	// non-javadoc: see superclass
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (produced == consumed) {
+			if (done) {
+				return -1;
+			}
+			inflate();
+		}
+		final int start = consumed & WINDOW_MASK;
+		int n = produced-consumed;
+		if (n > len) {
+			n = len;
+		}
+		if (n > WINDOW_SIZE-start) {
+			// up to the end of the window, the rest is read by the next call
+			n = WINDOW_SIZE-start;
+		}
+		System.arraycopy(window, start, b, off, n);
+		consumed += n;
+		return n;
+	}
+
+	// non-javadoc: see superclass
+	public int available() {
+		return produced-consumed;
+	}
+
+	// non-javadoc: see superclass
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Inflates until {@link #PENDING_LIMIT} bytes are pending or the
+	 * stream ends.
+	 * @throws IOException in case of error or invalid data
+	 */
+	private void inflate() throws IOException {
+		if (!started) {
+			started = true;
+			final int cmf = readByte();
+			final int flg = readByte();
+			if ((cmf&0x0f) != 8 || ((cmf<<8)|flg)%31 != 0 || (flg&0x20) != 0) {
+				throw new IOException("bad zlib header");
+			}
+		}
+		while (!done && produced-consumed < PENDING_LIMIT) {
+			if (type == NO_BLOCK) {
+				if (last) {
+					done = true;
+				} else {
+					startBlock();
+				}
+			} else if (type == STORED) {
+				while (stored > 0 && produced-consumed < PENDING_LIMIT) {
+					window[produced++ & WINDOW_MASK] = (byte) readByte();
+					stored--;
+				}
+				if (stored == 0) {
+					type = NO_BLOCK;
+				}
+			} else {
+				inflateCodes();
+			}
+		}
+	}
+
+	private void startBlock() throws IOException {
+		last = bits(1) == 1;
+		type = bits(2);
+		if (type == STORED) {
+			// stored blocks start at a byte boundary
+			bitBuffer = 0;
+			bitCount = 0;
+			final int len = readByte()|(readByte()<<8);
+			final int nlen = readByte()|(readByte()<<8);
+			if (len != (~nlen&0xffff)) {
+				throw new IOException("bad stored block length");
+			}
+			stored = len;
+		} else if (type == FIXED) {
+			currentLengthCount = FIXED_LENGTH_COUNT;
+			currentLengthSymbol = FIXED_LENGTH_SYMBOL;
+			currentDistanceCount = FIXED_DISTANCE_COUNT;
+			currentDistanceSymbol = FIXED_DISTANCE_SYMBOL;
+		} else if (type == DYNAMIC) {
+			readDynamicCodes();
+			currentLengthCount = lengthCount;
+			currentLengthSymbol = lengthSymbol;
+			currentDistanceCount = distanceCount;
+			currentDistanceSymbol = distanceSymbol;
+		} else {
+			throw new IOException("bad block type");
+		}
+	}
+
+	private void readDynamicCodes() throws IOException {
+		final int nlen = bits(5)+257;
+		final int ndist = bits(5)+1;
+		final int ncode = bits(4)+4;
+		if (nlen > MAX_LENGTH_CODES || ndist > MAX_DISTANCE_CODES) {
+			throw new IOException("bad code counts");
+		}
+		final byte[] lengths = new byte[MAX_LENGTH_CODES+MAX_DISTANCE_CODES];
+		for (int i = 0; i < ncode; i++) {
+			lengths[ORDER[i]] = (byte) bits(3);
+		}
+		// the code length codes use the length tables temporarily
+		construct(lengthCount, lengthSymbol, lengths, ORDER.length);
+		for (int i = ORDER.length-1; i >= 0; i--) {
+			lengths[i] = 0;
+		}
+		int index = 0;
+		while (index < nlen+ndist) {
+			int symbol = decode(lengthCount, lengthSymbol);
+			if (symbol < 16) {
+				lengths[index++] = (byte) symbol;
+			} else {
+				byte len = 0;
+				if (symbol == 16) {
+					if (index == 0) {
+						throw new IOException("repeat without length");
+					}
+					len = lengths[index-1];
+					symbol = 3+bits(2);
+				} else if (symbol == 17) {
+					symbol = 3+bits(3);
+				} else {
+					symbol = 11+bits(7);
+				}
+				if (index+symbol > nlen+ndist) {
+					throw new IOException("too many lengths");
+				}
+				while (symbol-- > 0) {
+					lengths[index++] = len;
+				}
+			}
+		}
+		if (lengths[256] == 0) {
+			throw new IOException("no end-of-block code");
+		}
+		construct(lengthCount, lengthSymbol, lengths, nlen);
+		final byte[] distances = new byte[ndist];
+		System.arraycopy(lengths, nlen, distances, 0, ndist);
+		construct(distanceCount, distanceSymbol, distances, ndist);
+	}
+
+	/**
+	 * Inflates literals and matches of a Huffman coded block until
+	 * {@link #PENDING_LIMIT} bytes are pending or the block ends.
+	 * @throws IOException in case of error or invalid data
+	 */
+	private void inflateCodes() throws IOException {
+		final byte[] w = window;
+		int out = produced;
+		try {
+			while (out-consumed < PENDING_LIMIT) {
+				int symbol = decode(currentLengthCount, currentLengthSymbol);
+				if (symbol < 256) {
+					w[out++ & WINDOW_MASK] = (byte) symbol;
+				} else if (symbol == 256) {
+					type = NO_BLOCK;
+					return;
+				} else {
+					symbol -= 257;
+					if (symbol >= LENGTH_BASE.length) {
+						throw new IOException("bad length code");
+					}
+					final int len = LENGTH_BASE[symbol]+bits(LENGTH_EXTRA[symbol]);
+					symbol = decode(currentDistanceCount, currentDistanceSymbol);
+					if (symbol >= DISTANCE_BASE.length) {
+						throw new IOException("bad distance code");
+					}
+					final int dist = DISTANCE_BASE[symbol]+bits(DISTANCE_EXTRA[symbol]);
+					if (dist > out) {
+						throw new IOException("distance too far back");
+					}
+					for (int i = len; i > 0; i--, out++) {
+						w[out & WINDOW_MASK] = w[(out-dist) & WINDOW_MASK];
+					}
+				}
+			}
+		} finally {
+			produced = out;
+		}
+	}
+
+	/**
+	 * Decodes a symbol with the given canonical Huffman code.
+	 * @param count the number of codes per code length
+	 * @param symbol the symbols ordered by code
+	 * @return the symbol
+	 * @throws IOException in case of error or invalid data
+	 */
+	private int decode(final short[] count, final short[] symbol) throws IOException {
+		int code = 0;
+		int first = 0;
+		int index = 0;
+		for (int len = 1; len <= MAX_BITS; len++) {
+			code |= bits(1);
+			final int n = count[len];
+			if (code-n < first) {
+				return symbol[index+(code-first)];
+			}
+			index += n;
+			first += n;
+			first <<= 1;
+			code <<= 1;
+		}
+		throw new IOException("bad code");
+	}
+
+	/**
+	 * Builds a canonical Huffman code from the given code lengths.
+	 * @param count receives the number of codes per code length
+	 * @param symbol receives the symbols ordered by code
+	 * @param lengths the code lengths of the symbols
+	 * @param n the number of symbols
+	 */
+	private static void construct(final short[] count, final short[] symbol, final byte[] lengths, final int n) {
+		for (int len = 0; len <= MAX_BITS; len++) {
+			count[len] = 0;
+		}
+		for (int i = 0; i < n; i++) {
+			count[lengths[i]]++;
+		}
+		final short[] offsets = new short[MAX_BITS+1];
+		for (int len = 1; len < MAX_BITS; len++) {
+			offsets[len+1] = (short) (offsets[len]+count[len]);
+		}
+		for (int i = 0; i < n; i++) {
+			if (lengths[i] != 0) {
+				symbol[offsets[lengths[i]]++] = (short) i;
+			}
+		}
+	}
+
+	private int bits(final int n) throws IOException {
+		int buffer = bitBuffer;
+		int count = bitCount;
+		while (count < n) {
+			buffer |= readByte()<<count;
+			count += 8;
+		}
+		bitBuffer = buffer>>>n;
+		bitCount = count-n;
+		return buffer&((1<<n)-1);
+	}
+
+	private int readByte() throws IOException {
+		if (inputPos == inputEnd) {
+			inputPos = 0;
+			inputEnd = in.read(input, 0, INPUT_SIZE);
+			if (inputEnd <= 0) {
+				inputEnd = 0;
+				throw new IOException("unexpected end of compressed data");
+			}
+		}
+		return input[inputPos++]&0xff;
+	}
+
+}
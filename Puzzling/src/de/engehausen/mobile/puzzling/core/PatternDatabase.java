@@ -0,0 +1,189 @@
+package de.engehausen.mobile.puzzling.core;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Disjoint additive pattern databases for the {@link Solver}.
+ * The tiles of the puzzle are partitioned into patterns; for each
+ * placement of the tiles of a pattern the database knows how many
+ * moves of these tiles are at least needed to bring them home.
+ * As the patterns are disjoint, the values of all patterns can
+ * be added up.
+ * <p>Only the difference between this number and the Manhattan
+ * distance of the pattern tiles is stored. It is always even,
+ * so half of it is kept in a nibble (values that do not fit are
+ * cut to 15, which keeps the heuristic admissible).</p>
+ * <p>The databases are read from the resources <code>/pdb4.bin</code>
+ * and <code>/pdb5.bin</code> the first time they are needed; they are
+ * built by <code>PatternDatabaseGenerator</code> in the
+ * <code>tools</code> folder. The format is: split level (byte),
+ * number of patterns (byte) and for each pattern the number of
+ * tiles (byte), the tiles (bytes) and the nibble-packed values
+ * indexed by {@link #rank(int[], int, int)}.</p>
+ */
+public final class PatternDatabase {
+
+	private static final String RESOURCE_PREFIX = "/pdb";
+	private static final String RESOURCE_SUFFIX = ".bin";
+
+	private static final PatternDatabase[] INSTANCES = new PatternDatabase[6];
+	private static final boolean[] LOADED = new boolean[6];
+
+	private final int cells;
+	private final int[][] patterns;
+	private final byte[][] values;
+	private final int[] patternOf;
+
+	/**
+	 * Returns the pattern database for the given split level. The database
+	 * is loaded on first use.
+	 * @param split the split level (3, 4 or 5)
+	 * @return the pattern database, or <code>null</code> if there is none
+	 * for the split level or it could not be loaded.
+	 */
+	public static PatternDatabase getInstance(final int split) {
+		synchronized (INSTANCES) {
+			if (split < 0 || split >= INSTANCES.length) {
+				return null;
+			}
+			if (!LOADED[split]) {
+				LOADED[split] = true;
+				final InputStream stream = PatternDatabase.class.getResourceAsStream(RESOURCE_PREFIX+split+RESOURCE_SUFFIX);
+				if (stream != null) {
+					try {
+						try {
+							INSTANCES[split] = new PatternDatabase(new DataInputStream(stream), split);
+						} finally {
+							stream.close();
+						}
+					} catch (IOException e) {
+						// no database then...
+					} catch (OutOfMemoryError e) {
+						// no database then...
+					}
+				}
+			}
+			return INSTANCES[split];
+		}
+	}
+
+	/**
+	 * Reads the pattern database.
+	 * @param in the stream to read from, must not be <code>null</code>.
+	 * @param split the expected split level
+	 * @throws IOException in case of error
+	 */
+	private PatternDatabase(final DataInputStream in, final int split) throws IOException {
+		if (in.readByte() != split) {
+			throw new IOException();
+		}
+		cells = split*split;
+		patterns = new int[in.readByte()][];
+		values = new byte[patterns.length][];
+		patternOf = new int[cells];
+		for (int i = cells-1; i >= 0; i--) {
+			patternOf[i] = -1;
+		}
+		for (int p = 0; p < patterns.length; p++) {
+			final int[] tiles = new int[in.readByte()];
+			for (int i = 0; i < tiles.length; i++) {
+				tiles[i] = in.readByte();
+				patternOf[tiles[i]] = p;
+			}
+			patterns[p] = tiles;
+			values[p] = new byte[(size(tiles.length, cells)+1)/2];
+			in.readFully(values[p]);
+		}
+	}
+
+	/**
+	 * Returns the number of patterns.
+	 * @return the number of patterns.
+	 */
+	public int getPatternCount() {
+		return patterns.length;
+	}
+
+	/**
+	 * Returns the number of tiles of the largest pattern.
+	 * @return the number of tiles of the largest pattern.
+	 */
+	public int getMaxPatternSize() {
+		int result = 0;
+		for (int p = patterns.length-1; p >= 0; p--) {
+			if (patterns[p].length > result) {
+				result = patterns[p].length;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the pattern the given tile belongs to.
+	 * @param tile the tile index
+	 * @return the pattern index or <code>-1</code> if the tile is in no pattern.
+	 */
+	public int getPattern(final int tile) {
+		return patternOf[tile];
+	}
+
+	/**
+	 * Returns the number of moves needed in addition to the Manhattan
+	 * distance of the tiles of the given pattern.
+	 * @param pattern the pattern index
+	 * @param where the current positions of all tiles, indexed by tile
+	 * @param scratch an array to hold the positions of the pattern tiles,
+	 * at least as long as the largest pattern
+	 * @return the additional moves needed (always even)
+	 */
+	public int getExtra(final int pattern, final int[] where, final int[] scratch) {
+		final int[] tiles = patterns[pattern];
+		for (int i = tiles.length-1; i >= 0; i--) {
+			scratch[i] = where[tiles[i]];
+		}
+		final int index = rank(scratch, tiles.length, cells);
+		final int b = values[pattern][index>>1];
+		return 2*(((index&1)==0?b:b>>4)&0x0f);
+	}
+
+	/**
+	 * Computes the index of the placement of the given number of tiles
+	 * on a board with the given number of cells. Each position is ranked
+	 * among the positions not taken by the preceding tiles.
+	 * @param positions the positions of the tiles, must not be <code>null</code>.
+	 * @param count the number of tiles
+	 * @param cells the number of cells of the board
+	 * @return the index, from zero to <code>cells!/(cells-count)!-1</code>
+	 */
+	static int rank(final int[] positions, final int count, final int cells) {
+		int index = 0;
+		for (int i = 0; i < count; i++) {
+			final int p = positions[i];
+			int smaller = 0;
+			for (int j = 0; j < i; j++) {
+				if (positions[j] < p) {
+					smaller++;
+				}
+			}
+			index = index*(cells-i) + p-smaller;
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the number of placements of the given number of tiles.
+	 * @param count the number of tiles
+	 * @param cells the number of cells of the board
+	 * @return the number of placements, <code>cells!/(cells-count)!</code>
+	 */
+	static int size(final int count, final int cells) {
+		int result = 1;
+		for (int i = 0; i < count; i++) {
+			result *= cells-i;
+		}
+		return result;
+	}
+
+}
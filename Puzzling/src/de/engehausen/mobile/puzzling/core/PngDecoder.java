@@ -0,0 +1,340 @@
+package de.engehausen.mobile.puzzling.core;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes PNG images row by row into an {@link ImageScaler}, so that the
+ * decoded image is never held in memory: besides the scaler only two
+ * scanlines and the inflater window are needed, whatever the height of
+ * the image. This allows to scale images which are too big to be decoded
+ * by the device.
+ * <p>All color types and bit depths are supported; the alpha channel and
+ * transparency information are ignored. Of interlaced images only the
+ * first pass (every eighth pixel of every eighth row) is decoded, which
+ * already is an image of an eighth of the size. Checksums are not checked.</p>
+ * <p>Non-interlaced images can be subsampled (see {@link #setSubsampling(int)}):
+ * all rows still have to be inflated and unfiltered, but only every n-th
+ * pixel of every n-th row is converted and passed to the scaler.</p>
+ * <p>Usage: create the decoder (which reads the header), optionally set
+ * the subsampling, start the scaler
+ * with the {@link #getWidth() width} and {@link #getHeight() height} of the
+ * decoded image, then {@link #decode(ImageScaler) decode}.</p>
+ */
+public class PngDecoder {
+
+	private static final int IHDR = 0x49484452;
+	private static final int PLTE = 0x504c5445;
+	private static final int IDAT = 0x49444154;
+	private static final long SIGNATURE = 0x89504e470d0a1a0aL;
+
+	private static final int GRAY = 0;
+	private static final int RGB = 2;
+	private static final int PALETTE = 3;
+	private static final int GRAY_ALPHA = 4;
+	private static final int RGB_ALPHA = 6;
+
+	private static final int ADAM7_STEP = 8;
+
+	private final DataInputStream in;
+	private final int width;
+	private final int height;
+	private final int depth;
+	private final int colorType;
+	private final int channels;
+	private final boolean interlaced;
+	private int step;
+	private int[] palette;
+	private int remaining;
+
+	/**
+	 * Creates the decoder and reads the header of the image, up to the
+	 * image data.
+	 * @param anInput the PNG data, must not be <code>null</code>.
+	 * @throws IOException if the data cannot be read or is not a supported PNG image
+	 */
+	public PngDecoder(final InputStream anInput) throws IOException {
+		in = new DataInputStream(anInput);
+		if (in.readLong() != SIGNATURE || in.readInt() != 13 || in.readInt() != IHDR) {
+			throw new IOException("not a PNG image");
+		}
+		final int w = in.readInt();
+		final int h = in.readInt();
+		depth = in.readUnsignedByte();
+		colorType = in.readUnsignedByte();
+		final int compression = in.readUnsignedByte();
+		final int filter = in.readUnsignedByte();
+		interlaced = in.readUnsignedByte() != 0;
+		in.readInt(); // CRC
+		if (colorType == GRAY) {
+			channels = 1;
+		} else if (colorType == RGB) {
+			channels = 3;
+		} else if (colorType == PALETTE) {
+			channels = 1;
+		} else if (colorType == GRAY_ALPHA) {
+			channels = 2;
+		} else if (colorType == RGB_ALPHA) {
+			channels = 4;
+		} else {
+			throw new IOException("unsupported color type "+colorType);
+		}
+		if (w <= 0 || h <= 0 || compression != 0 || filter != 0
+			|| (depth != 1 && depth != 2 && depth != 4 && depth != 8 && depth != 16)
+			|| (depth < 8 && channels > 1) || (depth > 8 && colorType == PALETTE)) {
+			throw new IOException("unsupported PNG image");
+		}
+		if (interlaced) {
+			// the first pass holds every eighth pixel of every eighth row
+			width = (w+ADAM7_STEP-1)/ADAM7_STEP;
+			height = (h+ADAM7_STEP-1)/ADAM7_STEP;
+		} else {
+			width = w;
+			height = h;
+		}
+		step = 1;
+		readToImageData();
+	}
+
+	/**
+	 * Sets the subsampling factor: only every <code>factor</code>-th pixel
+	 * of every <code>factor</code>-th row is decoded. Interlaced images are
+	 * not subsampled, as only their first pass is decoded anyway.
+	 * @param factor the subsampling factor (1 for none)
+	 */
+	public void setSubsampling(final int factor) {
+		step = (factor < 1 || interlaced) ? 1 : factor;
+	}
+
+	/**
+	 * Returns the width of the decoded image.
+	 * @return the width of the decoded image
+	 */
+	public int getWidth() {
+		return (width+step-1)/step;
+	}
+
+	/**
+	 * Returns the height of the decoded image.
+	 * @return the height of the decoded image
+	 */
+	public int getHeight() {
+		return (height+step-1)/step;
+	}
+
+	/**
+	 * Decodes the image, adding its rows to the given scaler. The scaler
+	 * must have been started for the width and height of the decoded image.
+	 * @param scaler the scaler, must not be <code>null</code>.
+	 * @throws IOException in case of error or invalid data
+	 */
+	public void decode(final ImageScaler scaler) throws IOException {
+		final InputStream data = new Inflater(new ImageDataStream());
+		final int bpp = (channels*depth+7)/8;
+		final int rowBytes = (width*channels*depth+7)/8;
+		byte[] previous = new byte[rowBytes+bpp];
+		byte[] current = new byte[rowBytes+bpp];
+		final int[] row = new int[getWidth()];
+		for (int y = 0; y < height; y++) {
+			final int filter = data.read();
+			if (filter < 0) {
+				throw new IOException("image data too short");
+			}
+			// the rows start at bpp, so filters can read "left" of the first byte
+			readFully(data, current, bpp, rowBytes);
+			unfilter(filter, current, previous, bpp, rowBytes);
+			if (y%step == 0) {
+				convert(current, bpp, row);
+				scaler.addRows(row, 0, row.length, 1);
+			}
+			final byte[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+	}
+
+	/**
+	 * Reads the chunks up to the first image data chunk, keeping the palette.
+	 * @throws IOException in case of error or invalid data
+	 */
+	private void readToImageData() throws IOException {
+		while (true) {
+			final int length = in.readInt();
+			final int type = in.readInt();
+			if (length < 0) {
+				throw new IOException("bad chunk length");
+			}
+			if (type == IDAT) {
+				remaining = length;
+				break;
+			} else if (type == PLTE) {
+				if (length%3 != 0 || length > 3*256) {
+					throw new IOException("bad palette");
+				}
+				palette = new int[256];
+				for (int i = 0; i < length/3; i++) {
+					palette[i] = 0xff000000|(in.readUnsignedByte()<<16)|(in.readUnsignedByte()<<8)|in.readUnsignedByte();
+				}
+			} else {
+				skip(length);
+			}
+			in.readInt(); // CRC
+		}
+		if (colorType == PALETTE && palette == null) {
+			throw new IOException("missing palette");
+		}
+	}
+
+	private void skip(final int length) throws IOException {
+		for (int n = length; n > 0; ) {
+			final int skipped = in.skipBytes(n);
+			if (skipped <= 0) {
+				throw new IOException("truncated chunk");
+			}
+			n -= skipped;
+		}
+	}
+
+	/**
+	 * Reverses the filter of a scanline (PNG specification, section 9).
+	 * @param filter the filter type
+	 * @param row the scanline, starting at <code>bpp</code>
+	 * @param prior the previous scanline, starting at <code>bpp</code>
+	 * @param bpp the number of bytes per complete pixel (at least one)
+	 * @param length the number of bytes of the scanline
+	 * @throws IOException if the filter type is unknown
+	 */
+	private static void unfilter(final int filter, final byte[] row, final byte[] prior, final int bpp, final int length) throws IOException {
+		final int end = bpp+length;
+		switch (filter) {
+			case 0:
+				break;
+			case 1:
+				for (int i = bpp; i < end; i++) {
+					row[i] += row[i-bpp];
+				}
+				break;
+			case 2:
+				for (int i = bpp; i < end; i++) {
+					row[i] += prior[i];
+				}
+				break;
+			case 3:
+				for (int i = bpp; i < end; i++) {
+					row[i] += ((row[i-bpp]&0xff)+(prior[i]&0xff))>>1;
+				}
+				break;
+			case 4:
+				for (int i = bpp; i < end; i++) {
+					final int a = row[i-bpp]&0xff;
+					final int b = prior[i]&0xff;
+					final int c = prior[i-bpp]&0xff;
+					final int p = a+b-c;
+					final int pa = p > a ? p-a : a-p;
+					final int pb = p > b ? p-b : b-p;
+					final int pc = p > c ? p-c : c-p;
+					row[i] += (pa <= pb && pa <= pc) ? a : (pb <= pc ? b : c);
+				}
+				break;
+			default:
+				throw new IOException("bad filter type "+filter);
+		}
+	}
+
+	/**
+	 * Converts every {@link #step}-th pixel of a scanline to opaque RGB pixels.
+	 * @param row the scanline, starting at <code>offset</code>
+	 * @param offset the offset of the scanline
+	 * @param pixels receives the pixels
+	 */
+	private void convert(final byte[] row, final int offset, final int[] pixels) {
+		final int count = pixels.length;
+		if (depth < 8) {
+			// gray or palette; several pixels per byte
+			final int mask = (1<<depth)-1;
+			final int scale = 255/mask;
+			for (int x = 0, bit = 0; x < count; x++, bit += step*depth) {
+				final int v = ((row[offset+(bit>>3)]&0xff)>>(8-depth-(bit&7)))&mask;
+				if (colorType == PALETTE) {
+					pixels[x] = palette[v];
+				} else {
+					final int g = v*scale;
+					pixels[x] = 0xff000000|(g<<16)|(g<<8)|g;
+				}
+			}
+		} else {
+			// of 16 bit samples the most significant byte is used
+			final int sample = depth>>3;
+			final int stride = step*channels*sample;
+			for (int x = 0, i = offset; x < count; x++, i += stride) {
+				if (colorType == PALETTE) {
+					pixels[x] = palette[row[i]&0xff];
+				} else if (channels < 3) {
+					final int g = row[i]&0xff;
+					pixels[x] = 0xff000000|(g<<16)|(g<<8)|g;
+				} else {
+					pixels[x] = 0xff000000|((row[i]&0xff)<<16)|((row[i+sample]&0xff)<<8)|(row[i+2*sample]&0xff);
+				}
+			}
+		}
+	}
+
+	private static void readFully(final InputStream data, final byte[] b, final int off, final int len) throws IOException {
+		for (int n = 0; n < len; ) {
+			final int read = data.read(b, off+n, len-n);
+			if (read < 0) {
+				throw new IOException("image data too short");
+			}
+			n += read;
+		}
+	}
+
+	/**
+	 * The concatenated contents of the image data chunks.
+	 */
+	private class ImageDataStream extends InputStream {
+
+		// non-javadoc: see superclass
+		public int read() throws IOException {
+			if (!next()) {
+				return -1;
+			}
+			remaining--;
+			return in.readUnsignedByte();
+		}
+
+		// non-javadoc: see superclass
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if (!next()) {
+				return -1;
+			}
+			final int n = in.read(b, off, len < remaining ? len : remaining);
+			if (n < 0) {
+				throw new IOException("truncated chunk");
+			}
+			remaining -= n;
+			return n;
+		}
+
+		/**
+		 * Moves to the next image data chunk if the current one is exhausted.
+		 * @return <code>false</code> if there is no more image data.
+		 * @throws IOException in case of error
+		 */
+		private boolean next() throws IOException {
+			while (remaining == 0) {
+				in.readInt(); // CRC
+				final int length = in.readInt();
+				if (in.readInt() != IDAT || length < 0) {
+					remaining = -1;
+				} else {
+					remaining = length;
+				}
+			}
+			return remaining > 0;
+		}
+
+	}
+
+}
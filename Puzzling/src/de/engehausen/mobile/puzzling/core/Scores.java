@@ -0,0 +1,47 @@
+package de.engehausen.mobile.puzzling.core;
+
+/**
+ * The high scores (best times in seconds) per split level.
+ */
+public class Scores {
+
+	private static final int MIN_SPLIT = 3;
+
+	private final int[] scores;
+
+	/**
+	 * Creates the high scores for the given array, holding the best
+	 * time of the lowest split level first.
+	 * @param values the best times, used <i>by reference</i>; must
+	 * not be <code>null</code>.
+	 */
+	public Scores(final int[] values) {
+		scores = values;
+	}
+
+	/**
+	 * Returns the best time for the given split level.
+	 * @param split the split level (3, 4 or 5)
+	 * @return the best time in seconds
+	 */
+	public int getBest(final int split) {
+		return scores[split-MIN_SPLIT];
+	}
+
+	/**
+	 * Records the time a puzzle has been solved in.
+	 * @param split the split level (3, 4 or 5)
+	 * @param seconds the time in seconds; negative values
+	 * (e.g. of a cancelled timer) are ignored
+	 * @return <code>true</code> if the time is a new high score.
+	 */
+	public boolean record(final int split, final int seconds) {
+		final int idx = split-MIN_SPLIT;
+		if (seconds >= 0 && scores[idx] > seconds) {
+			scores[idx] = seconds;
+			return true;
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,177 @@
+package de.engehausen.mobile.puzzling.core;
+
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * A pool of shuffled boards whose shortest solution falls into a
+ * band of lengths per split level (see {@link #BANDS}). Calibrating
+ * a board needs a {@link Solver} run, so the pool is filled in a
+ * background thread and refilled whenever a board is taken.
+ * <p>5x5 boards cannot be calibrated on a device in reasonable time,
+ * so there is no band for them; {@link #take(int)} returns
+ * <code>null</code> and the caller is expected to shuffle on its own.</p>
+ */
+public class ShufflePool implements Runnable {
+
+	/**
+	 * The minimum and maximum length of the shortest solution, by split level.
+	 */
+	public static final int[][] BANDS = {
+		null, null, null,
+		{ 16, 24 },
+		{ 30, 40 },
+		null
+	};
+
+	private static final int POOL_SIZE = 3;
+	private static final long MAX_NODES = 250000L;
+	private static final Random RANDOM = new Random(System.currentTimeMillis()+1);
+
+	private final Vector[] pools;
+	private boolean running;
+
+	/**
+	 * Creates the (empty) pool; it is filled when run.
+	 */
+	public ShufflePool() {
+		pools = new Vector[BANDS.length];
+		for (int i = BANDS.length-1; i >= 0; i--) {
+			if (BANDS[i] != null) {
+				pools[i] = new Vector(POOL_SIZE);
+			}
+		}
+		running = true;
+	}
+
+	/**
+	 * Takes a calibrated board from the pool.
+	 * @param split the split level
+	 * @return the board state (see {@link Board#getState()}) or <code>null</code>
+	 * if no calibrated board is available
+	 */
+	public synchronized byte[] take(final int split) {
+		final byte[] result;
+		if (split < pools.length && pools[split] != null && pools[split].size() > 0) {
+			result = (byte[]) pools[split].elementAt(0);
+			pools[split].removeElementAt(0);
+			notify();
+		} else {
+			result = null;
+		}
+		return result;
+	}
+
+	/**
+	 * Stops filling the pool.
+	 */
+	public synchronized void stop() {
+		running = false;
+		notify();
+	}
+
+	/**
+	 * Fills the pool until stopped.
+	 */
+	public void run() {
+		while (true) {
+			final int split;
+			synchronized (this) {
+				split = nextSplit();
+				if (!running) {
+					return;
+				}
+				if (split < 0) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// ignore
+					}
+					continue;
+				}
+			}
+			final byte[] board = generate(split, BANDS[split][0], BANDS[split][1]);
+			if (board != null) {
+				synchronized (this) {
+					pools[split].addElement(board);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the split level whose pool is to be filled next.
+	 * @return the split level, or <code>-1</code> if all pools are full.
+	 */
+	private int nextSplit() {
+		int result = -1;
+		for (int i = pools.length-1; i >= 0; i--) {
+			if (pools[i] != null && pools[i].size() < POOL_SIZE && (result < 0 || pools[i].size() < pools[result].size())) {
+				result = i;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Generates a board and checks whether its shortest solution
+	 * is within the given band. The board is shuffled by a random walk
+	 * of the hole (without immediate reversals) of a length within
+	 * and beyond the band; the hole is brought back to the right,
+	 * bottom afterwards.
+	 * @param split the split level
+	 * @param min the minimum length of the shortest solution
+	 * @param max the maximum length of the shortest solution
+	 * @return the board, or <code>null</code> if it does not fit the band
+	 */
+	static byte[] generate(final int split, final int min, final int max) {
+		final int size = split*split;
+		final byte[] board = new byte[size];
+		for (int i = size-1; i >= 0; i--) {
+			board[i] = (byte) i;
+		}
+		int hole = size-1;
+		int previous = -1;
+		for (int i = min+RANDOM.nextInt(2*max); i > 0; ) {
+			final int x = hole%split;
+			final int y = hole/split;
+			final int next;
+			switch (RANDOM.nextInt(4)) {
+				case 0:
+					next = x > 0?hole-1:-1;
+					break;
+				case 1:
+					next = y > 0?hole-split:-1;
+					break;
+				case 2:
+					next = x < split-1?hole+1:-1;
+					break;
+				default:
+					next = y < split-1?hole+split:-1;
+					break;
+			}
+			if (next >= 0 && next != previous) {
+				board[hole] = board[next];
+				board[next] = (byte) (size-1);
+				previous = hole;
+				hole = next;
+				i--;
+			}
+		}
+		// move empty field to right, bottom
+		while (hole%split < split-1) {
+			board[hole] = board[hole+1];
+			hole++;
+		}
+		while (hole < size-1) {
+			board[hole] = board[hole+split];
+			hole += split;
+		}
+		board[hole] = (byte) (size-1);
+		final Solver solver = new Solver(board, split, null);
+		solver.setMaxNodes(MAX_NODES);
+		final byte[] solution = solver.solve();
+		return (solution != null && solution.length >= min && solution.length <= max)?board:null;
+	}
+
+}
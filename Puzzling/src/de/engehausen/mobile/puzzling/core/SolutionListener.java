@@ -0,0 +1,17 @@
+package de.engehausen.mobile.puzzling.core;
+
+/**
+ * Receives the outcome of a {@link Solver} run in the background.
+ */
+public interface SolutionListener {
+
+	/**
+	 * Invoked by the solver thread when the search has ended.
+	 * @param solver the solver that ran the search
+	 * @param moves the positions (row by row index) the hole has to
+	 * be moved to, in order; <code>null</code> if the search was
+	 * cancelled or gave up.
+	 */
+	void solved(Solver solver, byte[] moves);
+
+}
@@ -0,0 +1,658 @@
+package de.engehausen.mobile.puzzling.core;
+
+/**
+ * Optimal solver for the n-puzzle using iterative deepening A* (IDA*).
+ * The heuristic is the Manhattan distance plus the larger of linear
+ * conflicts and the additive {@link PatternDatabase} values (if a
+ * database is available for the split level); all of them are updated
+ * incrementally while searching.
+ * <p>The solver works on a copy of the packed board state (see
+ * {@link Board#getState()}) and does not depend on any user interface
+ * classes. It can be run in a thread of its own, in which case the
+ * result is passed to a {@link SolutionListener}, and it can be
+ * cancelled at any time.</p>
+ * <p>The search can use several threads (see {@link #setThreads(int)}).
+ * Once the cost bound exceeds the depth of a shallow frontier, the
+ * frontier nodes are handed out to a pool of workers, each searching
+ * on its own copy of the board. The worker threads are started once per
+ * search and wait for the next iteration between iterations. While
+ * searching, the workers only read the bound and the stop flags (the
+ * latter being <code>volatile</code>); they synchronize when taking a
+ * frontier node, when reporting the next bound and every
+ * {@link #NODE_BATCH} nodes to account for the node budget.</p>
+ */
+public class Solver implements Runnable {
+
+	/**
+	 * The default number of nodes to expand before giving up.
+	 */
+	public static final long DEFAULT_MAX_NODES = 4000000L;
+
+	private static final int FOUND = -1;
+	private static final int ABORTED = -2;
+	private static final int MAX_DEPTH = 255;
+	private static final int NODE_BATCH = 1024;
+	private static final int TASKS_PER_THREAD = 16;
+
+	private final byte[] board;
+	private final int split;
+	private final int size;
+	private final int hole;
+	private final int start;
+	private final int[][] neighbours;
+	private final byte[] distances;
+	private final SolutionListener listener;
+	private PatternDatabase database;
+	private boolean usePatterns;
+	private int threads;
+	private long maxNodes;
+	private long nodes;
+	private byte[][] tasks;
+	private int nextTask;
+	private int nextBound;
+	private int iteration;
+	private int iterationBound;
+	private int busy;
+	private boolean shutdown;
+	private byte[] solution;
+	private volatile boolean cancelled;
+	private volatile boolean finished;
+
+	/**
+	 * Creates a solver for the given board.
+	 * @param aBoard the board state as returned by {@link Board#getState()},
+	 * must not be <code>null</code>; the array is copied.
+	 * @param aSplit the split level (3, 4 or 5)
+	 * @param aListener the listener to inform when run in a thread of its own,
+	 * may be <code>null</code>.
+	 */
+	public Solver(final byte[] aBoard, final int aSplit, final SolutionListener aListener) {
+		split = aSplit;
+		size = aSplit*aSplit;
+		hole = size-1;
+		listener = aListener;
+		maxNodes = DEFAULT_MAX_NODES;
+		usePatterns = true;
+		threads = 1;
+		board = new byte[size];
+		System.arraycopy(aBoard, 0, board, 0, size);
+		neighbours = new int[size][];
+		distances = new byte[size*size];
+		int holePosition = 0;
+		for (int pos = 0; pos < size; pos++) {
+			final int x = pos%split;
+			final int y = pos/split;
+			int count = 0;
+			final int[] tmp = new int[4];
+			if (x > 0) {
+				tmp[count++] = pos-1;
+			}
+			if (y > 0) {
+				tmp[count++] = pos-split;
+			}
+			if (x < split-1) {
+				tmp[count++] = pos+1;
+			}
+			if (y < split-1) {
+				tmp[count++] = pos+split;
+			}
+			neighbours[pos] = new int[count];
+			System.arraycopy(tmp, 0, neighbours[pos], 0, count);
+			for (int tile = 0; tile < hole; tile++) {
+				distances[tile*size+pos] = (byte) (abs(tile%split-x)+abs(tile/split-y));
+			}
+			if (board[pos] == hole) {
+				holePosition = pos;
+			}
+		}
+		start = holePosition;
+	}
+
+	/**
+	 * Sets the maximum number of nodes to expand before the search
+	 * gives up.
+	 * @param max the maximum number of nodes to expand
+	 */
+	public void setMaxNodes(final long max) {
+		maxNodes = max;
+	}
+
+	/**
+	 * Sets whether to use the pattern database (if there is one for the
+	 * split level). By default it is used.
+	 * @param patterns <code>true</code> to use the pattern database
+	 */
+	public void setUsePatterns(final boolean patterns) {
+		usePatterns = patterns;
+	}
+
+	/**
+	 * Sets the number of threads to search with. By default the
+	 * search runs in the calling thread only.
+	 * @param count the number of threads, at least one
+	 */
+	public void setThreads(final int count) {
+		threads = count<1?1:count;
+	}
+
+	/**
+	 * Returns the number of nodes expanded so far.
+	 * @return the number of nodes expanded so far.
+	 */
+	public synchronized long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Cancels the search. The search stops as soon as possible,
+	 * without a result.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Indicates whether the search has been cancelled.
+	 * @return <code>true</code> if the search has been cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Runs the search and passes the result to the listener.
+	 */
+	public void run() {
+		final byte[] moves = solve();
+		if (listener != null) {
+			listener.solved(this, moves);
+		}
+	}
+
+	/**
+	 * Searches for a shortest solution of the board.
+	 * @return the positions (row by row index) the hole has to be
+	 * moved to, in order; <code>null</code> if the board cannot be solved,
+	 * the search was cancelled or the maximum number of nodes was exceeded.
+	 */
+	public byte[] solve() {
+		if (!isSolvable(board, split)) {
+			return null;
+		}
+		if (usePatterns) {
+			database = PatternDatabase.getInstance(split);
+		}
+		final Worker[] workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker();
+		}
+		final Worker root = workers[0];
+		root.start(null);
+		int depth = 0;
+		if (threads > 1) {
+			tasks = frontier(threads*TASKS_PER_THREAD);
+			depth = tasks[0].length;
+		}
+		int bound = root.md+(root.lc>root.extra?root.lc:root.extra);
+		try {
+			while (bound <= MAX_DEPTH) {
+				final int t;
+				if (bound <= depth || threads == 1) {
+					// single threaded, or solutions this short may end above the frontier
+					root.start(null);
+					t = root.search(0, bound, root.md, root.lc, root.extra, -1);
+					root.flush();
+					if (t == FOUND) {
+						found(root.path, root.length);
+					}
+				} else {
+					t = iterate(workers, bound);
+				}
+				if (t == FOUND) {
+					return solution;
+				} else if (t == ABORTED || t == Integer.MAX_VALUE) {
+					break;
+				}
+				bound = t;
+			}
+		} finally {
+			synchronized (this) {
+				// ends the worker threads, if any were started
+				shutdown = true;
+				notifyAll();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks whether the given board can be solved. This is the case
+	 * if the parity of the permutation equals the parity of the
+	 * distance of the hole to its solved position.
+	 * @param board the board state, must not be <code>null</code>.
+	 * @param split the split level
+	 * @return <code>true</code> if the board can be solved.
+	 */
+	public static boolean isSolvable(final byte[] board, final int split) {
+		final int size = split*split;
+		final boolean[] seen = new boolean[size];
+		int parity = 0;
+		int hx = 0, hy = 0;
+		for (int i = 0; i < size; i++) {
+			if (board[i] == size-1) {
+				hx = i%split;
+				hy = i/split;
+			}
+			if (!seen[i]) {
+				// a cycle of length l consists of l-1 transpositions
+				int j = i;
+				while (!seen[j]) {
+					seen[j] = true;
+					j = board[j];
+					parity++;
+				}
+				parity--;
+			}
+		}
+		return (parity + split-1-hx + split-1-hy) % 2 == 0;
+	}
+
+	/**
+	 * Runs one iteration of the search with all workers, the calling
+	 * thread being the first worker. The threads of the other workers
+	 * are started with the first iteration.
+	 * @param workers the workers, must not be <code>null</code>.
+	 * @param bound the cost bound of the iteration
+	 * @return {@link #FOUND}, {@link #ABORTED} or the smallest cost exceeding the bound
+	 */
+	private int iterate(final Worker[] workers, final int bound) {
+		synchronized (this) {
+			nextTask = 0;
+			nextBound = Integer.MAX_VALUE;
+			iterationBound = bound;
+			busy = workers.length-1;
+			if (iteration++ == 0) {
+				for (int i = 1; i < workers.length; i++) {
+					new Thread(workers[i]).start();
+				}
+			}
+			notifyAll();
+		}
+		workers[0].bound = bound;
+		workers[0].searchTasks();
+		synchronized (this) {
+			while (busy > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					cancelled = true;
+				}
+			}
+			if (solution != null) {
+				return FOUND;
+			} else if (finished || cancelled) {
+				return ABORTED;
+			}
+			return nextBound;
+		}
+	}
+
+	/**
+	 * Builds the frontier the iterations of a parallel search are split into:
+	 * all move sequences (without immediate reversals) of the smallest depth
+	 * yielding at least the given number of sequences.
+	 * @param count the minimum number of sequences
+	 * @return the move sequences, never <code>null</code>.
+	 */
+	private byte[][] frontier(final int count) {
+		byte[][] level = new byte[][] { new byte[0] };
+		while (level.length < count) {
+			int total = 0;
+			for (int i = level.length-1; i >= 0; i--) {
+				total += neighbours[last(level[i], 1)].length-(level[i].length>0?1:0);
+			}
+			final byte[][] next = new byte[total][];
+			int n = 0;
+			for (int i = 0; i < level.length; i++) {
+				final byte[] prefix = level[i];
+				final int previous = prefix.length>0?last(prefix, 2):-1;
+				final int[] moves = neighbours[last(prefix, 1)];
+				for (int j = 0; j < moves.length; j++) {
+					if (moves[j] != previous) {
+						final byte[] sequence = new byte[prefix.length+1];
+						System.arraycopy(prefix, 0, sequence, 0, prefix.length);
+						sequence[prefix.length] = (byte) moves[j];
+						next[n++] = sequence;
+					}
+				}
+			}
+			level = next;
+		}
+		return level;
+	}
+
+	/**
+	 * Returns a position of the hole while making the given moves.
+	 * @param sequence the moves, must not be <code>null</code>.
+	 * @param back one for the position after all moves, two for the
+	 * one before the last move etc.
+	 * @return the position of the hole
+	 */
+	private int last(final byte[] sequence, final int back) {
+		final int i = sequence.length-back;
+		return i<0?start:sequence[i];
+	}
+
+	private synchronized byte[] takeTask() {
+		return (nextTask < tasks.length && !finished)?tasks[nextTask++]:null;
+	}
+
+	private synchronized void reportBound(final int value) {
+		if (value < nextBound) {
+			nextBound = value;
+		}
+	}
+
+	private synchronized void found(final byte[] path, final int length) {
+		if (solution == null) {
+			solution = new byte[length];
+			System.arraycopy(path, 0, solution, 0, length);
+		}
+		finished = true;
+	}
+
+	/**
+	 * Accounts for expanded nodes.
+	 * @param count the number of nodes expanded
+	 * @return <code>false</code> if the search is to stop
+	 */
+	private synchronized boolean addNodes(final int count) {
+		nodes += count;
+		if (nodes > maxNodes) {
+			finished = true;
+		}
+		return !finished;
+	}
+
+	private static int abs(final int value) {
+		return value<0?-value:value;
+	}
+
+	/**
+	 * Searches on a private copy of the board. When run in a thread of
+	 * its own, it takes part in each iteration of the search until the
+	 * search ends.
+	 */
+	private class Worker implements Runnable {
+
+		private final byte[] tiles;
+		private final int[] where;
+		private final int[] rowConflicts;
+		private final int[] colConflicts;
+		private final int[] line;
+		private final int[] lis;
+		private final int[] extras;
+		private final int[] scratch;
+		private final byte[] path;
+		private int position;
+		private int length;
+		private int pending;
+		private int md, lc, extra;
+		private int bound;
+
+		Worker() {
+			tiles = new byte[size];
+			where = new int[size];
+			rowConflicts = new int[split];
+			colConflicts = new int[split];
+			line = new int[split];
+			lis = new int[split];
+			if (database != null) {
+				extras = new int[database.getPatternCount()];
+				scratch = new int[database.getMaxPatternSize()];
+			} else {
+				extras = null;
+				scratch = null;
+			}
+			path = new byte[MAX_DEPTH+1];
+		}
+
+		/**
+		 * Sets up the board after making the given moves and computes its
+		 * heuristic values.
+		 * @param prefix the moves to make, may be <code>null</code>.
+		 */
+		void start(final byte[] prefix) {
+			System.arraycopy(board, 0, tiles, 0, size);
+			position = start;
+			if (prefix != null) {
+				for (int i = 0; i < prefix.length; i++) {
+					final int to = prefix[i];
+					tiles[position] = tiles[to];
+					tiles[to] = (byte) hole;
+					position = to;
+					path[i] = (byte) to;
+				}
+			}
+			md = 0;
+			for (int pos = size-1; pos >= 0; pos--) {
+				where[tiles[pos]] = pos;
+				if (tiles[pos] != hole) {
+					md += distances[tiles[pos]*size+pos];
+				}
+			}
+			lc = 0;
+			for (int i = split-1; i >= 0; i--) {
+				rowConflicts[i] = rowConflicts(i);
+				colConflicts[i] = columnConflicts(i);
+				lc += rowConflicts[i] + colConflicts[i];
+			}
+			extra = 0;
+			if (extras != null) {
+				for (int i = extras.length-1; i >= 0; i--) {
+					extras[i] = database.getExtra(i, where, scratch);
+					extra += extras[i];
+				}
+			}
+		}
+
+		public void run() {
+			int seen = 0;
+			while (true) {
+				synchronized (Solver.this) {
+					while (iteration == seen && !shutdown) {
+						try {
+							Solver.this.wait();
+						} catch (InterruptedException e) {
+							cancelled = true;
+						}
+					}
+					if (shutdown) {
+						return;
+					}
+					seen = iteration;
+					bound = iterationBound;
+				}
+				searchTasks();
+				synchronized (Solver.this) {
+					busy--;
+					Solver.this.notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Searches from frontier nodes until there are none left.
+		 */
+		void searchTasks() {
+			byte[] prefix;
+			while ((prefix = takeTask()) != null) {
+				start(prefix);
+				final int t = search(prefix.length, bound, md, lc, extra, last(prefix, 2));
+				flush();
+				if (t == FOUND) {
+					found(path, length);
+				} else if (t == ABORTED) {
+					break;
+				} else {
+					reportBound(t);
+				}
+			}
+		}
+
+		/**
+		 * Accounts for the nodes expanded but not reported yet.
+		 */
+		void flush() {
+			addNodes(pending);
+			pending = 0;
+		}
+
+		/**
+		 * Depth first search up to the given bound.
+		 * @param g the number of moves made so far
+		 * @param limit the current cost bound
+		 * @param md the Manhattan distance of the current board
+		 * @param lc the linear conflicts of the current board
+		 * @param extra the sum of the pattern database values of the current board
+		 * @param previous the previous position of the hole
+		 * @return {@link #FOUND}, {@link #ABORTED} or the smallest cost exceeding the bound
+		 */
+		int search(final int g, final int limit, final int md, final int lc, final int extra, final int previous) {
+			final int f = g+md+(lc>extra?lc:extra);
+			if (f > limit) {
+				return f;
+			}
+			if (md == 0) {
+				length = g;
+				return FOUND;
+			}
+			if (cancelled || finished) {
+				return ABORTED;
+			}
+			if (++pending == NODE_BATCH) {
+				pending = 0;
+				if (!addNodes(NODE_BATCH)) {
+					return ABORTED;
+				}
+			}
+			int min = Integer.MAX_VALUE;
+			final int from = position;
+			final int[] next = neighbours[from];
+			for (int i = next.length-1; i >= 0; i--) {
+				final int to = next[i];
+				if (to != previous) {
+					final int tile = tiles[to];
+					tiles[from] = (byte) tile;
+					tiles[to] = (byte) hole;
+					position = to;
+					where[tile] = from;
+					final int[] conflicts;
+					final int a, b;
+					if (to/split == from/split) {
+						// horizontal move: the columns of the tile change
+						conflicts = colConflicts;
+						a = to%split;
+						b = from%split;
+					} else {
+						// vertical move: the rows of the tile change
+						conflicts = rowConflicts;
+						a = to/split;
+						b = from/split;
+					}
+					final int oldA = conflicts[a];
+					final int oldB = conflicts[b];
+					if (conflicts == colConflicts) {
+						conflicts[a] = columnConflicts(a);
+						conflicts[b] = columnConflicts(b);
+					} else {
+						conflicts[a] = rowConflicts(a);
+						conflicts[b] = rowConflicts(b);
+					}
+					int pattern = -1, oldExtra = 0, newExtra = extra;
+					if (extras != null) {
+						pattern = database.getPattern(tile);
+						if (pattern >= 0) {
+							oldExtra = extras[pattern];
+							extras[pattern] = database.getExtra(pattern, where, scratch);
+							newExtra += extras[pattern]-oldExtra;
+						}
+					}
+					path[g] = (byte) to;
+					final int t = search(g+1, limit,
+						md+distances[tile*size+from]-distances[tile*size+to],
+						lc+conflicts[a]+conflicts[b]-oldA-oldB,
+						newExtra, from);
+					if (t == FOUND) {
+						return FOUND;
+					}
+					if (pattern >= 0) {
+						extras[pattern] = oldExtra;
+					}
+					conflicts[a] = oldA;
+					conflicts[b] = oldB;
+					where[tile] = to;
+					position = from;
+					tiles[to] = (byte) tile;
+					tiles[from] = (byte) hole;
+					if (t == ABORTED) {
+						return ABORTED;
+					}
+					if (t < min) {
+						min = t;
+					}
+				}
+			}
+			return min;
+		}
+
+		private int rowConflicts(final int row) {
+			int count = 0;
+			for (int pos = row*split, end = pos+split; pos < end; pos++) {
+				final int tile = tiles[pos];
+				if (tile != hole && tile/split == row) {
+					line[count++] = tile%split;
+				}
+			}
+			return conflicts(count);
+		}
+
+		private int columnConflicts(final int column) {
+			int count = 0;
+			for (int pos = column; pos < size; pos += split) {
+				final int tile = tiles[pos];
+				if (tile != hole && tile%split == column) {
+					line[count++] = tile/split;
+				}
+			}
+			return conflicts(count);
+		}
+
+		/**
+		 * Computes the linear conflict penalty for the tiles in the current line:
+		 * each tile that has to leave the line to let the others pass costs two
+		 * extra moves. The minimal number of such tiles is the number of tiles
+		 * not in the longest increasing subsequence of their target positions.
+		 * @param count the number of tiles in {@link #line}
+		 * @return the linear conflict penalty
+		 */
+		private int conflicts(final int count) {
+			int longest = 0;
+			for (int i = 0; i < count; i++) {
+				int l = 1;
+				for (int j = 0; j < i; j++) {
+					if (line[j] < line[i] && lis[j] >= l) {
+						l = lis[j]+1;
+					}
+				}
+				lis[i] = l;
+				if (l > longest) {
+					longest = l;
+				}
+			}
+			return 2*(count-longest);
+		}
+
+	}
+
+}
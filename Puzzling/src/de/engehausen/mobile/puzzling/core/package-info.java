@@ -0,0 +1,6 @@
+/**
+ * The game logic of the n-puzzle: board state and moves, shuffling,
+ * solving, hints and scoring. This package does not depend on MIDP
+ * classes and can be used on any Java platform.
+ */
+package de.engehausen.mobile.puzzling.core;
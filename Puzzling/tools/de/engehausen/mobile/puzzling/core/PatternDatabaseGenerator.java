@@ -0,0 +1,273 @@
+package de.engehausen.mobile.puzzling.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Desktop tool building the {@link PatternDatabase} resources from scratch.
+ * This class is not part of the MIDlet; compile and run it on a desktop JVM:
+ * <pre>
+ * javac -d bin -sourcepath src tools/de/engehausen/mobile/puzzling/core/PatternDatabaseGenerator.java
+ * java -cp bin de.engehausen.mobile.puzzling.core.PatternDatabaseGenerator 4 res/pdb4.bin
+ * java -cp bin de.engehausen.mobile.puzzling.core.PatternDatabaseGenerator 5 res/pdb5.bin
+ * </pre>
+ * Further arguments define the patterns as comma separated tile numbers
+ * (counting from one, row by row), e.g. <code>1,2,5,6,9 3,4,7,8,12 10,11,13,14,15</code>
+ * which is the default for 4x4. Every tile has to be in exactly one pattern.
+ * <p>For each pattern a breadth first search is run backwards from the solved
+ * state over the placements of the pattern tiles and the hole; moves of tiles
+ * outside the pattern cost nothing. The state space has
+ * <code>cells!/(cells-tiles)!*cells</code> entries and must fit into an
+ * <code>int</code> and a byte array, which rules out six tile patterns on 5x5
+ * boards.</p>
+ */
+public final class PatternDatabaseGenerator {
+
+	private static final int UNVISITED = 0xff;
+
+	private static final String[][] DEFAULTS = {
+		null, null, null, null,
+		{ "1,2,5,6,9", "3,4,7,8,12", "10,11,13,14,15" },
+		{ "1,2,6,7", "3,4,8,9", "5,10,15,20", "11,12,16,17", "13,14,18,19", "21,22,23,24" }
+	};
+
+	private PatternDatabaseGenerator() {
+		// tool
+	}
+
+	/**
+	 * Generates a pattern database file.
+	 * @param args split level, output file and optionally the patterns
+	 * @throws IOException in case of error
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: PatternDatabaseGenerator <split> <file> [<tile>,<tile>,... ...]");
+			System.exit(1);
+		}
+		final int split = Integer.parseInt(args[0]);
+		final String[] definitions;
+		if (args.length > 2) {
+			definitions = new String[args.length-2];
+			System.arraycopy(args, 2, definitions, 0, definitions.length);
+		} else if (split < DEFAULTS.length && DEFAULTS[split] != null) {
+			definitions = DEFAULTS[split];
+		} else {
+			throw new IllegalArgumentException("no default patterns for split "+split);
+		}
+		final int[][] patterns = parse(definitions, split);
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[1])));
+		try {
+			out.writeByte(split);
+			out.writeByte(patterns.length);
+			for (int p = 0; p < patterns.length; p++) {
+				final long start = System.currentTimeMillis();
+				final byte[] values = generate(split, patterns[p]);
+				out.writeByte(patterns[p].length);
+				for (int i = 0; i < patterns[p].length; i++) {
+					out.writeByte(patterns[p][i]);
+				}
+				out.write(values);
+				System.out.println("pattern "+definitions[p]+": "+values.length+" bytes in "+(System.currentTimeMillis()-start)+"ms");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Parses the pattern definitions.
+	 * @param definitions comma separated tile numbers, counting from one
+	 * @param split the split level
+	 * @return the patterns as tile indices
+	 */
+	private static int[][] parse(final String[] definitions, final int split) {
+		final int hole = split*split-1;
+		final boolean[] used = new boolean[hole];
+		final int[][] result = new int[definitions.length][];
+		for (int p = 0; p < definitions.length; p++) {
+			final String[] numbers = definitions[p].split(",");
+			result[p] = new int[numbers.length];
+			for (int i = 0; i < numbers.length; i++) {
+				final int tile = Integer.parseInt(numbers[i].trim())-1;
+				if (tile < 0 || tile >= hole || used[tile]) {
+					throw new IllegalArgumentException("invalid or duplicate tile "+numbers[i]);
+				}
+				used[tile] = true;
+				result[p][i] = tile;
+			}
+		}
+		for (int i = 0; i < hole; i++) {
+			if (!used[i]) {
+				throw new IllegalArgumentException("tile "+(i+1)+" is in no pattern");
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the nibble-packed values of a pattern.
+	 * @param split the split level
+	 * @param tiles the tiles of the pattern
+	 * @return the nibble-packed values, indexed by {@link PatternDatabase#rank(int[], int, int)}
+	 */
+	static byte[] generate(final int split, final int[] tiles) {
+		final int cells = split*split;
+		final int count = tiles.length;
+		final int entries = PatternDatabase.size(count, cells);
+		final byte[] dist = new byte[entries*cells];
+		for (int i = dist.length-1; i >= 0; i--) {
+			dist[i] = (byte) UNVISITED;
+		}
+		final int[][] neighbours = new int[cells][];
+		for (int pos = 0; pos < cells; pos++) {
+			final int x = pos%split;
+			final int y = pos/split;
+			final int[] tmp = new int[4];
+			int n = 0;
+			if (x > 0) {
+				tmp[n++] = pos-1;
+			}
+			if (y > 0) {
+				tmp[n++] = pos-split;
+			}
+			if (x < split-1) {
+				tmp[n++] = pos+1;
+			}
+			if (y < split-1) {
+				tmp[n++] = pos+split;
+			}
+			neighbours[pos] = new int[n];
+			System.arraycopy(tmp, 0, neighbours[pos], 0, n);
+		}
+
+		final int[] positions = new int[count];
+		System.arraycopy(tiles, 0, positions, 0, count);
+		final int goal = PatternDatabase.rank(positions, count, cells)*cells+cells-1;
+		dist[goal] = 0;
+		IntList current = new IntList();
+		IntList next = new IntList();
+		current.add(goal);
+		int d = 0;
+		while (current.size > 0) {
+			for (int i = 0; i < current.size; i++) {
+				final int state = current.values[i];
+				if ((dist[state]&0xff) != d) {
+					continue; // reached more cheaply meanwhile
+				}
+				final int index = state/cells;
+				final int blank = state%cells;
+				unrank(index, count, cells, positions);
+				final int[] next4 = neighbours[blank];
+				for (int j = next4.length-1; j >= 0; j--) {
+					final int nb = next4[j];
+					int tile = count-1;
+					while (tile >= 0 && positions[tile] != nb) {
+						tile--;
+					}
+					if (tile < 0) {
+						// moving a tile outside of the pattern is free
+						final int ns = index*cells+nb;
+						if ((dist[ns]&0xff) > d) {
+							dist[ns] = (byte) d;
+							current.add(ns);
+						}
+					} else {
+						positions[tile] = blank;
+						final int ns = PatternDatabase.rank(positions, count, cells)*cells+nb;
+						positions[tile] = nb;
+						if ((dist[ns]&0xff) == UNVISITED) {
+							dist[ns] = (byte) (d+1);
+							next.add(ns);
+						}
+					}
+				}
+			}
+			final IntList tmp = current;
+			current = next;
+			next = tmp;
+			next.size = 0;
+			d++;
+		}
+
+		final byte[] result = new byte[(entries+1)/2];
+		for (int index = 0; index < entries; index++) {
+			int min = UNVISITED;
+			for (int blank = cells-1; blank >= 0; blank--) {
+				final int value = dist[index*cells+blank]&0xff;
+				if (value < min) {
+					min = value;
+				}
+			}
+			unrank(index, count, cells, positions);
+			int manhattan = 0;
+			for (int i = 0; i < count; i++) {
+				manhattan += Math.abs(tiles[i]%split-positions[i]%split)+Math.abs(tiles[i]/split-positions[i]/split);
+			}
+			final int extra = Math.min(15, (min-manhattan)/2);
+			if (extra < 0 || (min-manhattan)%2 != 0) {
+				throw new IllegalStateException("inconsistent value at index "+index);
+			}
+			result[index>>1] |= (byte) ((index&1)==0?extra:extra<<4);
+		}
+		return result;
+	}
+
+	/**
+	 * Inverse of {@link PatternDatabase#rank(int[], int, int)}.
+	 * @param index the index
+	 * @param count the number of tiles
+	 * @param cells the number of cells of the board
+	 * @param positions receives the positions of the tiles
+	 */
+	static void unrank(final int index, final int count, final int cells, final int[] positions) {
+		int rest = index;
+		for (int i = count-1; i >= 0; i--) {
+			positions[i] = rest%(cells-i);
+			rest /= cells-i;
+		}
+		// turn the ranks among the free positions into positions
+		for (int i = 0; i < count; i++) {
+			int p = positions[i];
+			boolean changed = true;
+			int skipped = 0;
+			while (changed) {
+				changed = false;
+				int taken = 0;
+				for (int j = 0; j < i; j++) {
+					if (positions[j] <= p) {
+						taken++;
+					}
+				}
+				if (taken != skipped) {
+					p += taken-skipped;
+					skipped = taken;
+					changed = true;
+				}
+			}
+			positions[i] = p;
+		}
+	}
+
+	/**
+	 * Growable list of <code>int</code> values.
+	 */
+	private static class IntList {
+
+		private int[] values = new int[1024];
+		private int size;
+
+		void add(final int value) {
+			if (size == values.length) {
+				final int[] tmp = new int[2*size];
+				System.arraycopy(values, 0, tmp, 0, size);
+				values = tmp;
+			}
+			values[size++] = value;
+		}
+
+	}
+
+}